@@ -0,0 +1,56 @@
+package com.jlox;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A whole script from source to finished slots on each backend: scanning,
+// parsing, optimizing, resolving and running, as `jlox file` would.
+//
+//   java -jar jmh/target/benchmarks.jar ExecutionBenchmark -prof gc
+//
+// Forks add jdk.incubator.vector so ARRAYS runs the vector kernels.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ExecutionBenchmark {
+    @Param({"DEEP_EXPRESSION", "STATEMENTS", "STRING_CONCAT", "VARIABLES", "ARRAYS"})
+    String shape;
+
+    @Param({"100", "1000"})
+    int size;
+
+    @Param({"AST", "VM", "JVM", "ARENA"})
+    String backend;
+
+    String source;
+    Lox.Backend selected;
+
+    @Setup
+    public void setup() {
+        this.source = Inputs.generate(Inputs.Shape.valueOf(this.shape), this.size);
+        this.selected = Lox.Backend.valueOf(this.backend);
+    }
+
+    // Returning the slots keeps the results live.
+    @Benchmark
+    public Object[] run() {
+        Lox lox = new Lox();
+        lox.backend = this.selected;
+        lox.out = new OutputSink.Capture();
+        lox.run(this.source);
+        return lox.slots;
+    }
+}
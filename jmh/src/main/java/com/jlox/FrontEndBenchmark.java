@@ -0,0 +1,52 @@
+package com.jlox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Scanning and parsing on their own. The parse benchmark starts from a
+// token list scanned once in setup, so it measures only the parser.
+//
+//   java -jar jmh/target/benchmarks.jar FrontEndBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FrontEndBenchmark {
+    @Param({"DEEP_EXPRESSION", "STATEMENTS", "STRING_CONCAT", "VARIABLES", "ARRAYS"})
+    String shape;
+
+    @Param({"100", "1000"})
+    int size;
+
+    String source;
+    List<Token> tokens;
+
+    @Setup
+    public void setup() {
+        this.source = Inputs.generate(Inputs.Shape.valueOf(this.shape), this.size);
+        this.tokens = new Scanner(this.source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Token> scan() {
+        return new Scanner(this.source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Interpreter(TokenStream.of(this.tokens)).Parse();
+    }
+}
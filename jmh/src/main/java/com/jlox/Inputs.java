@@ -0,0 +1,73 @@
+package com.jlox;
+
+// Generated Lox sources for the benchmarks. Every shape reads variables
+// rather than literals where it computes, so the optimizer cannot fold the
+// work away before the backend sees it.
+final class Inputs {
+    enum Shape {
+        DEEP_EXPRESSION,
+        STATEMENTS,
+        STRING_CONCAT,
+        VARIABLES,
+        ARRAYS,
+    }
+
+    private Inputs() {
+    }
+
+    static String generate(Shape shape, int size) {
+        StringBuilder sb = new StringBuilder();
+        switch (shape) {
+            case DEEP_EXPRESSION -> {
+                for (int i = 0; i < 10; i++) {
+                    sb.append(name(i)).append(" = ").append(i).append(";\n");
+                }
+                sb.append("x = ");
+                for (int i = 0; i < size; i++) {
+                    sb.append("(").append(name(i % 10)).append(" + ");
+                }
+                sb.append("1");
+                sb.append(")".repeat(size));
+                sb.append(";\n");
+            }
+            case STATEMENTS -> {
+                sb.append("x = 0;\n");
+                for (int i = 0; i < size; i++) {
+                    sb.append("x = x * 2 - ").append(i % 10).append(" / 4;\n");
+                    sb.append("if (x > 1000) { x = x / 3; }\n");
+                }
+            }
+            case STRING_CONCAT -> {
+                sb.append("s = \"\";\n");
+                for (int i = 0; i < size; i++) {
+                    sb.append("s = s + \"item").append(i % 100).append(";\";\n");
+                }
+            }
+            case VARIABLES -> {
+                for (int i = 0; i < size; i++) {
+                    sb.append(name(i)).append(" = ").append(i).append(";\n");
+                }
+                for (int i = 1; i < size; i++) {
+                    sb.append(name(i)).append(" = ").append(name(i - 1)).append(" + ").append(name(i)).append(";\n");
+                }
+            }
+            case ARRAYS -> {
+                sb.append("a = array(").append(size).append(");\n");
+                sb.append("for (i = 0; i < len(a); i = i + 1) { a[i] = i / 3; }\n");
+                sb.append("b = add(mul(a, 2), 1);\n");
+                sb.append("s = dot(a, b) + sum(b);\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    // Identifiers are letters only, so spell the index in base 26.
+    static String name(int i) {
+        StringBuilder sb = new StringBuilder("v");
+        do {
+            sb.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return sb.toString();
+    }
+}
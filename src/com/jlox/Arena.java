@@ -0,0 +1,277 @@
+package com.jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A resolved program flattened into a few arrays instead of a graph of
+// Expr/Stmt objects. A node is one to three ints in nodes and is referred
+// to by its offset in that array. The first int packs the kind into the
+// low KIND_BITS and the first operand a above them; operands b and c, for
+// kinds that have them, follow in the next ints:
+//
+//   kind | a << KIND_BITS, b, c
+//
+// Children are node offsets, CONSTANT points into constants, GET/SET hold
+// a slot, and a BLOCK's statements are the b entries of lists starting at
+// a. A CALL's function is a constant and its arguments sit in lists like
+// a block's statements. The top level is a BLOCK at root. Leaves take one
+// int and binary operators two, and tokens are not kept, so an Arena is a
+// fraction of the size of the tree it came from. It is immutable and can be
+// shared between threads. ArenaEvaluator runs it.
+final class Arena {
+    static final int KIND_BITS = 6;
+    static final int KIND_MASK = (1 << KIND_BITS) - 1;
+    static final int MAX_OPERAND = (1 << (32 - KIND_BITS)) - 1;
+
+    // Expressions.
+    static final int CONSTANT = 0;      // a: constant
+    static final int GET = 1;           // a: slot
+    static final int SET = 2;           // a: slot, b: value
+    static final int ADD = 3;           // a: left, b: right, as for every binary kind
+    static final int SUBTRACT = 4;
+    static final int MULTIPLY = 5;
+    static final int DIVIDE = 6;
+    static final int EQUAL = 7;
+    static final int NOT_EQUAL = 8;
+    static final int LESS = 9;
+    static final int GREATER = 10;
+    static final int LESS_EQUAL = 11;
+    static final int GREATER_EQUAL = 12;
+    static final int AND = 13;
+    static final int OR = 14;
+    static final int NOT = 15;          // a: operand, as for every unary kind
+    static final int NEGATE = 16;
+    static final int PLUS = 17;
+    static final int CALL = 18;         // a: constant holding the NativeFunction, b: first argument in lists
+    static final int INDEX = 19;        // a: array, b: index
+    static final int SET_INDEX = 20;    // a: array, b: index, c: value
+
+    // Statements.
+    static final int EXPRESSION = 21;   // a: expression
+    static final int PRINT = 22;        // a: expression
+    static final int BLOCK = 23;        // a: first entry in lists, b: count
+    static final int IF = 24;           // a: condition, b: then, c: else or -1
+    static final int WHILE = 25;        // a: condition, b: body
+
+    final int[] nodes;
+    final int[] lists;
+    final Object[] constants;
+    final int root;
+
+    Arena(int[] nodes, int[] lists, Object[] constants, int root) {
+        this.nodes = nodes;
+        this.lists = lists;
+        this.constants = constants;
+        this.root = root;
+    }
+
+    // stmts must already be resolved.
+    static Arena of(List<Stmt> stmts) {
+        Builder builder = new Builder();
+        int root = builder.block(stmts);
+        return new Arena(
+                Arrays.copyOf(builder.nodes, builder.count),
+                Arrays.copyOf(builder.lists, builder.listCount),
+                builder.constants.toArray(),
+                root);
+    }
+
+    // Array headers plus contents; boxed constants and strings are counted
+    // at their usual compressed-oops sizes.
+    long estimatedBytes() {
+        long bytes = 16 + 16 + 4L * this.nodes.length + 16 + 4L * this.lists.length + 16 + 4L * this.constants.length;
+        for (Object c : this.constants) {
+            if (c instanceof String s) bytes += 40 + s.length();
+            else if (c != null) bytes += 16;
+        }
+        return bytes;
+    }
+
+    static final class Builder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        int[] nodes;
+        int count;
+        int[] lists;
+        int listCount;
+        List<Object> constants;
+        Map<Object, Integer> constantIndex;
+
+        Builder() {
+            this.nodes = new int[256];
+            this.count = 0;
+            this.lists = new int[16];
+            this.listCount = 0;
+            this.constants = new ArrayList<>();
+            this.constantIndex = new HashMap<>();
+        }
+
+        int node(int kind, int a) {
+            if (a < 0 || a > MAX_OPERAND) {
+                throw new IllegalStateException("Program too large to flatten");
+            }
+            return this.append(kind | a << KIND_BITS);
+        }
+
+        int node(int kind, int a, int b) {
+            int at = this.node(kind, a);
+            this.append(b);
+            return at;
+        }
+
+        int node(int kind, int a, int b, int c) {
+            int at = this.node(kind, a, b);
+            this.append(c);
+            return at;
+        }
+
+        int append(int word) {
+            if (this.count == this.nodes.length) {
+                this.nodes = Arrays.copyOf(this.nodes, this.count * 2);
+            }
+            this.nodes[this.count] = word;
+            return this.count++;
+        }
+
+        int constant(Object value) {
+            Integer index = this.constantIndex.get(value);
+            if (index != null) return index;
+            this.constants.add(value);
+            this.constantIndex.put(value, this.constants.size() - 1);
+            return this.constants.size() - 1;
+        }
+
+        // Children are built first, since they may contain lists of their
+        // own, then their offsets are copied into lists in one run.
+        int block(List<Stmt> stmts) {
+            int[] children = new int[stmts.size()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = stmts.get(i).accept(this);
+            }
+            return this.node(BLOCK, this.list(children), children.length);
+        }
+
+        int list(int[] children) {
+            if (this.listCount + children.length > this.lists.length) {
+                this.lists = Arrays.copyOf(this.lists, Math.max(this.lists.length * 2, this.listCount + children.length));
+            }
+            System.arraycopy(children, 0, this.lists, this.listCount, children.length);
+            this.listCount += children.length;
+            return this.listCount - children.length;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            int kind = switch (expr.operator.type) {
+                case TokenType.PLUS -> ADD;
+                case TokenType.MINUS -> SUBTRACT;
+                case TokenType.MULTIPLY -> MULTIPLY;
+                case TokenType.DIVIDE -> DIVIDE;
+                case TokenType.EQUALS -> EQUAL;
+                case TokenType.NOT_EQUALS -> NOT_EQUAL;
+                case TokenType.LESS_THAN -> LESS;
+                case TokenType.GREATER_THAN -> GREATER;
+                case TokenType.LESS_THAN_OR_EQUAL -> LESS_EQUAL;
+                case TokenType.GREATER_THAN_OR_EQUAL -> GREATER_EQUAL;
+                default -> throw new IllegalStateException("Cannot flatten operator " + expr.operator.type);
+            };
+            int left = expr.left.accept(this);
+            int right = expr.right.accept(this);
+            return this.node(kind, left, right);
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return this.node(SET, expr.slot, expr.value.accept(this));
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return this.node(CONSTANT, this.constant(expr.value));
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return this.node(GET, expr.slot);
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            int kind = switch (expr.operator.type) {
+                case TokenType.NOT -> NOT;
+                case TokenType.MINUS -> NEGATE;
+                case TokenType.PLUS -> PLUS;
+                default -> throw new IllegalStateException("Cannot flatten operator " + expr.operator.type);
+            };
+            return this.node(kind, expr.right.accept(this));
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            int left = expr.left.accept(this);
+            int right = expr.right.accept(this);
+            return this.node(expr.op.type == TokenType.OR ? OR : AND, left, right);
+        }
+
+        // Groupings only matter to the parser.
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            int[] arguments = new int[expr.arguments.size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = expr.arguments.get(i).accept(this);
+            }
+            return this.node(CALL, this.constant(expr.function), this.list(arguments));
+        }
+
+        @Override
+        public Integer visitIndexExpr(Expr.Index expr) {
+            int array = expr.array.accept(this);
+            int index = expr.index.accept(this);
+            return this.node(INDEX, array, index);
+        }
+
+        @Override
+        public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+            int array = expr.array.accept(this);
+            int index = expr.index.accept(this);
+            int value = expr.value.accept(this);
+            return this.node(SET_INDEX, array, index, value);
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            return this.node(EXPRESSION, stmt.expression.accept(this));
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.PrintStmt stmt) {
+            return this.node(PRINT, stmt.expression.accept(this));
+        }
+
+        @Override
+        public Integer visitBlock(Stmt.Block stmt) {
+            return this.block(stmt.statements);
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.IfStmt stmt) {
+            int condition = stmt.condition.accept(this);
+            int then = stmt.thenBranch.accept(this);
+            int otherwise = stmt.elseBranch == null ? -1 : stmt.elseBranch.accept(this);
+            return this.node(IF, condition, then, otherwise);
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.WhileStmt stmt) {
+            int condition = stmt.condition.accept(this);
+            int body = stmt.body.accept(this);
+            return this.node(WHILE, condition, body);
+        }
+    }
+}
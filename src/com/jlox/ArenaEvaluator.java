@@ -0,0 +1,191 @@
+package com.jlox;
+
+// Walks an Arena. Operators have the same fast paths as the VM and
+// otherwise use the tree walker's, so results and errors match the other
+// backends. Like the tree walker, every statement costs one step of the
+// meter.
+class ArenaEvaluator {
+    Object[] slots;
+    OutputSink out;
+    Budget.Meter meter;
+    int[] nodes;
+    int[] lists;
+    Object[] constants;
+
+    ArenaEvaluator(Object[] slots, OutputSink out) {
+        this.slots = slots;
+        this.out = out;
+    }
+
+    void run(Arena arena) {
+        this.nodes = arena.nodes;
+        this.lists = arena.lists;
+        this.constants = arena.constants;
+        // The top level is not a statement of its own.
+        this.block(arena.root);
+    }
+
+    // The statements of the BLOCK at n.
+    void block(int n) {
+        int[] lists = this.lists;
+        for (int i = this.nodes[n] >>> Arena.KIND_BITS, end = i + this.nodes[n + 1]; i < end; i++) {
+            this.execute(lists[i]);
+        }
+    }
+
+    void execute(int n) {
+        if (this.meter != null) this.meter.tick();
+        int[] nodes = this.nodes;
+        int word = nodes[n];
+        int a = word >>> Arena.KIND_BITS;
+        switch (word & Arena.KIND_MASK) {
+            case Arena.EXPRESSION -> this.eval(a);
+            case Arena.PRINT -> this.out.println(this.eval(a));
+            case Arena.BLOCK -> this.block(n);
+            case Arena.IF -> {
+                if (Lox.isTruth(this.eval(a))) this.execute(nodes[n + 1]);
+                else if (nodes[n + 2] >= 0) this.execute(nodes[n + 2]);
+            }
+            case Arena.WHILE -> {
+                while (Lox.isTruth(this.eval(a))) {
+                    this.execute(nodes[n + 1]);
+                }
+            }
+            default -> throw new IllegalStateException("Not a statement: " + (word & Arena.KIND_MASK));
+        }
+    }
+
+    Object eval(int n) {
+        int word = this.nodes[n];
+        int a = word >>> Arena.KIND_BITS;
+        int kind = word & Arena.KIND_MASK;
+        switch (kind) {
+            case Arena.CONSTANT -> {
+                return this.constants[a];
+            }
+            case Arena.GET -> {
+                return this.slots[a];
+            }
+            case Arena.SET -> {
+                Object value = this.eval(this.nodes[n + 1]);
+                this.slots[a] = value;
+                return value;
+            }
+            case Arena.NOT -> {
+                return Lox.unary(TokenType.NOT, this.eval(a));
+            }
+            case Arena.NEGATE -> {
+                return Lox.unary(TokenType.MINUS, this.eval(a));
+            }
+            case Arena.PLUS -> {
+                return Lox.unary(TokenType.PLUS, this.eval(a));
+            }
+            case Arena.CALL -> {
+                return this.call((NativeFunction) this.constants[a], this.nodes[n + 1]);
+            }
+            case Arena.INDEX -> {
+                Object array = this.eval(a);
+                return NumberArray.get(array, this.eval(this.nodes[n + 1]));
+            }
+            case Arena.SET_INDEX -> {
+                Object array = this.eval(a);
+                Object index = this.eval(this.nodes[n + 1]);
+                return NumberArray.set(array, index, this.eval(this.nodes[n + 2]));
+            }
+            default -> {
+                Object l = this.eval(a);
+                Object r = this.eval(this.nodes[n + 1]);
+                return binary(kind, l, r);
+            }
+        }
+    }
+
+    // The arguments are the f.arity entries of lists starting at first.
+    Object call(NativeFunction f, int first) {
+        int[] lists = this.lists;
+        switch (f.arity) {
+            case 0 -> {
+                return f.call();
+            }
+            case 1 -> {
+                return f.call(this.eval(lists[first]));
+            }
+            case 2 -> {
+                Object a = this.eval(lists[first]);
+                return f.call(a, this.eval(lists[first + 1]));
+            }
+            case 3 -> {
+                Object a = this.eval(lists[first]);
+                Object b = this.eval(lists[first + 1]);
+                return f.call(a, b, this.eval(lists[first + 2]));
+            }
+            case 4 -> {
+                Object a = this.eval(lists[first]);
+                Object b = this.eval(lists[first + 1]);
+                Object c = this.eval(lists[first + 2]);
+                return f.call(a, b, c, this.eval(lists[first + 3]));
+            }
+            default -> {
+                Object[] arguments = new Object[f.arity];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = this.eval(lists[first + i]);
+                }
+                return f.callAll(arguments);
+            }
+        }
+    }
+
+    static Object binary(int kind, Object l, Object r) {
+        switch (kind) {
+            case Arena.ADD -> {
+                if (l instanceof Long a && r instanceof Long b) return Numbers.add(a, b);
+                if (l instanceof Double a && r instanceof Double b) return a + b;
+                return Lox.binary(TokenType.PLUS, l, r);
+            }
+            case Arena.SUBTRACT -> {
+                if (l instanceof Long a && r instanceof Long b) return Numbers.subtract(a, b);
+                if (l instanceof Double a && r instanceof Double b) return a - b;
+                return Lox.binary(TokenType.MINUS, l, r);
+            }
+            case Arena.MULTIPLY -> {
+                if (l instanceof Long a && r instanceof Long b) return Numbers.multiply(a, b);
+                if (l instanceof Double a && r instanceof Double b) return a * b;
+                return Lox.binary(TokenType.MULTIPLY, l, r);
+            }
+            case Arena.DIVIDE -> {
+                if (l instanceof Long a && r instanceof Long b) return Numbers.divide(a, b);
+                if (l instanceof Double a && r instanceof Double b) return a / b;
+                return Lox.binary(TokenType.DIVIDE, l, r);
+            }
+            case Arena.EQUAL -> {
+                return Lox.equal(l, r);
+            }
+            case Arena.NOT_EQUAL -> {
+                return !Lox.equal(l, r);
+            }
+            case Arena.LESS -> {
+                if (l instanceof Long a && r instanceof Long b) return a < b;
+                return Lox.binary(TokenType.LESS_THAN, l, r);
+            }
+            case Arena.GREATER -> {
+                if (l instanceof Long a && r instanceof Long b) return a > b;
+                return Lox.binary(TokenType.GREATER_THAN, l, r);
+            }
+            case Arena.LESS_EQUAL -> {
+                if (l instanceof Long a && r instanceof Long b) return a <= b;
+                return Lox.binary(TokenType.LESS_THAN_OR_EQUAL, l, r);
+            }
+            case Arena.GREATER_EQUAL -> {
+                if (l instanceof Long a && r instanceof Long b) return a >= b;
+                return Lox.binary(TokenType.GREATER_THAN_OR_EQUAL, l, r);
+            }
+            case Arena.AND -> {
+                return Lox.logical(TokenType.AND, l, r);
+            }
+            case Arena.OR -> {
+                return Lox.logical(TokenType.OR, l, r);
+            }
+            default -> throw new IllegalStateException("Not an expression: " + kind);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.jlox;
+
+abstract class BinaryNode {
+    // What each node is, for dispatch(). Uninitialized and Generic are OTHER.
+    static final int OTHER = 0;
+    static final int LONG_ADD = 1;
+    static final int LONG_SUBTRACT = 2;
+    static final int LONG_MULTIPLY = 3;
+    static final int LONG_DIVIDE = 4;
+    static final int LONG_LESS = 5;
+    static final int LONG_GREATER = 6;
+    static final int LONG_LESS_EQUAL = 7;
+    static final int LONG_GREATER_EQUAL = 8;
+    static final int LONG_EQUAL = 9;
+    static final int LONG_NOT_EQUAL = 10;
+    static final int DOUBLE_ADD = 11;
+    static final int DOUBLE_SUBTRACT = 12;
+    static final int DOUBLE_MULTIPLY = 13;
+    static final int DOUBLE_DIVIDE = 14;
+    static final int DOUBLE_LESS = 15;
+    static final int DOUBLE_GREATER = 16;
+    static final int DOUBLE_LESS_EQUAL = 17;
+    static final int DOUBLE_GREATER_EQUAL = 18;
+    static final int DOUBLE_EQUAL = 19;
+    static final int DOUBLE_NOT_EQUAL = 20;
+    static final int STRING_CONCAT = 21;
+
+    static final BinaryNode UNINITIALIZED = new Uninitialized();
+    static final BinaryNode GENERIC = new Generic();
+
+    final int kind;
+
+    BinaryNode(int kind) {
+        this.kind = kind;
+    }
+
+    abstract Object execute(Expr.Binary expr, Object l, Object r);
+
+    // Every specialized class is final and called from its own case, so
+    // each of these call sites only ever sees one class and inlines. A
+    // single node.execute() call for all of them goes megamorphic as soon
+    // as a script uses a few operators.
+    static Object dispatch(BinaryNode node, Expr.Binary expr, Object l, Object r) {
+        return switch (node.kind) {
+            case LONG_ADD -> ((LongAdd) node).execute(expr, l, r);
+            case LONG_SUBTRACT -> ((LongSubtract) node).execute(expr, l, r);
+            case LONG_MULTIPLY -> ((LongMultiply) node).execute(expr, l, r);
+            case LONG_DIVIDE -> ((LongDivide) node).execute(expr, l, r);
+            case LONG_LESS -> ((LongLess) node).execute(expr, l, r);
+            case LONG_GREATER -> ((LongGreater) node).execute(expr, l, r);
+            case LONG_LESS_EQUAL -> ((LongLessEqual) node).execute(expr, l, r);
+            case LONG_GREATER_EQUAL -> ((LongGreaterEqual) node).execute(expr, l, r);
+            case LONG_EQUAL -> ((LongEqual) node).execute(expr, l, r);
+            case LONG_NOT_EQUAL -> ((LongNotEqual) node).execute(expr, l, r);
+            case DOUBLE_ADD -> ((DoubleAdd) node).execute(expr, l, r);
+            case DOUBLE_SUBTRACT -> ((DoubleSubtract) node).execute(expr, l, r);
+            case DOUBLE_MULTIPLY -> ((DoubleMultiply) node).execute(expr, l, r);
+            case DOUBLE_DIVIDE -> ((DoubleDivide) node).execute(expr, l, r);
+            case DOUBLE_LESS -> ((DoubleLess) node).execute(expr, l, r);
+            case DOUBLE_GREATER -> ((DoubleGreater) node).execute(expr, l, r);
+            case DOUBLE_LESS_EQUAL -> ((DoubleLessEqual) node).execute(expr, l, r);
+            case DOUBLE_GREATER_EQUAL -> ((DoubleGreaterEqual) node).execute(expr, l, r);
+            case DOUBLE_EQUAL -> ((DoubleEqual) node).execute(expr, l, r);
+            case DOUBLE_NOT_EQUAL -> ((DoubleNotEqual) node).execute(expr, l, r);
+            case STRING_CONCAT -> ((StringConcat) node).execute(expr, l, r);
+            default -> node.execute(expr, l, r);
+        };
+    }
+
+    static Object generalize(Expr.Binary expr, Object l, Object r) {
+        expr.node = GENERIC;
+        return Lox.binary(expr.operator.type, l, r);
+    }
+
+    static BinaryNode specialize(TokenType op, Object l, Object r) {
+        if (l instanceof Long && r instanceof Long) {
+            switch (op) {
+                case TokenType.PLUS -> {
+                    return new LongAdd();
+                }
+                case TokenType.MINUS -> {
+                    return new LongSubtract();
+                }
+                case TokenType.MULTIPLY -> {
+                    return new LongMultiply();
+                }
+                case TokenType.DIVIDE -> {
+                    return new LongDivide();
+                }
+                case TokenType.LESS_THAN -> {
+                    return new LongLess();
+                }
+                case TokenType.GREATER_THAN -> {
+                    return new LongGreater();
+                }
+                case TokenType.LESS_THAN_OR_EQUAL -> {
+                    return new LongLessEqual();
+                }
+                case TokenType.GREATER_THAN_OR_EQUAL -> {
+                    return new LongGreaterEqual();
+                }
+                case TokenType.EQUALS -> {
+                    return new LongEqual();
+                }
+                case TokenType.NOT_EQUALS -> {
+                    return new LongNotEqual();
+                }
+            }
+        }
+        if (l instanceof Double && r instanceof Double) {
+            switch (op) {
+                case TokenType.PLUS -> {
+                    return new DoubleAdd();
+                }
+                case TokenType.MINUS -> {
+                    return new DoubleSubtract();
+                }
+                case TokenType.MULTIPLY -> {
+                    return new DoubleMultiply();
+                }
+                case TokenType.DIVIDE -> {
+                    return new DoubleDivide();
+                }
+                case TokenType.LESS_THAN -> {
+                    return new DoubleLess();
+                }
+                case TokenType.GREATER_THAN -> {
+                    return new DoubleGreater();
+                }
+                case TokenType.LESS_THAN_OR_EQUAL -> {
+                    return new DoubleLessEqual();
+                }
+                case TokenType.GREATER_THAN_OR_EQUAL -> {
+                    return new DoubleGreaterEqual();
+                }
+                case TokenType.EQUALS -> {
+                    return new DoubleEqual();
+                }
+                case TokenType.NOT_EQUALS -> {
+                    return new DoubleNotEqual();
+                }
+            }
+        }
+        if (Lox.isString(l) && Lox.isString(r) && op == TokenType.PLUS) {
+            return new StringConcat();
+        }
+        return GENERIC;
+    }
+
+    static final class Uninitialized extends BinaryNode {
+        Uninitialized() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            BinaryNode node = specialize(expr.operator.type, l, r);
+            expr.node = node;
+            return node.execute(expr, l, r);
+        }
+    }
+
+    static final class Generic extends BinaryNode {
+        Generic() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            return Lox.binary(expr.operator.type, l, r);
+        }
+    }
+
+    static final class LongAdd extends BinaryNode {
+        LongAdd() {
+            super(LONG_ADD);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return Numbers.add(a, b);
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongSubtract extends BinaryNode {
+        LongSubtract() {
+            super(LONG_SUBTRACT);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return Numbers.subtract(a, b);
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongMultiply extends BinaryNode {
+        LongMultiply() {
+            super(LONG_MULTIPLY);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return Numbers.multiply(a, b);
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongDivide extends BinaryNode {
+        LongDivide() {
+            super(LONG_DIVIDE);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return Numbers.divide(a, b);
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongLess extends BinaryNode {
+        LongLess() {
+            super(LONG_LESS);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return a < b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongGreater extends BinaryNode {
+        LongGreater() {
+            super(LONG_GREATER);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return a > b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongLessEqual extends BinaryNode {
+        LongLessEqual() {
+            super(LONG_LESS_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return a <= b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongGreaterEqual extends BinaryNode {
+        LongGreaterEqual() {
+            super(LONG_GREATER_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return a >= b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongEqual extends BinaryNode {
+        LongEqual() {
+            super(LONG_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return a.longValue() == b.longValue();
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class LongNotEqual extends BinaryNode {
+        LongNotEqual() {
+            super(LONG_NOT_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Long a && r instanceof Long b) return a.longValue() != b.longValue();
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleAdd extends BinaryNode {
+        DoubleAdd() {
+            super(DOUBLE_ADD);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a + b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleSubtract extends BinaryNode {
+        DoubleSubtract() {
+            super(DOUBLE_SUBTRACT);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a - b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleMultiply extends BinaryNode {
+        DoubleMultiply() {
+            super(DOUBLE_MULTIPLY);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a * b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleDivide extends BinaryNode {
+        DoubleDivide() {
+            super(DOUBLE_DIVIDE);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a / b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleLess extends BinaryNode {
+        DoubleLess() {
+            super(DOUBLE_LESS);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a < b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleGreater extends BinaryNode {
+        DoubleGreater() {
+            super(DOUBLE_GREATER);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a > b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleLessEqual extends BinaryNode {
+        DoubleLessEqual() {
+            super(DOUBLE_LESS_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a <= b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleGreaterEqual extends BinaryNode {
+        DoubleGreaterEqual() {
+            super(DOUBLE_GREATER_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a >= b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleEqual extends BinaryNode {
+        DoubleEqual() {
+            super(DOUBLE_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a.equals(b);
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class DoubleNotEqual extends BinaryNode {
+        DoubleNotEqual() {
+            super(DOUBLE_NOT_EQUAL);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return !a.equals(b);
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class StringConcat extends BinaryNode {
+        StringConcat() {
+            super(STRING_CONCAT);
+        }
+
+        @Override
+        Object execute(Expr.Binary expr, Object l, Object r) {
+            if (Lox.isString(l) && Lox.isString(r)) return Rope.concat(l, r);
+            return generalize(expr, l, r);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.jlox;
+
+import java.time.Duration;
+
+// Limits for one run of a script. A step is one executed statement; loop
+// bodies are statements, so every iteration costs at least one. The string
+// length limit applies to every string a script builds, in chars; the
+// allocation limit counts bytes of strings (two per char) and arrays (eight
+// per element) together. Budgets are immutable and can be shared; each run
+// meters against its own Meter.
+public final class Budget {
+    public enum Limit {
+        STEPS,
+        STRING_LENGTH,
+        ALLOCATION,
+        DEADLINE,
+    }
+
+    public static final Budget UNLIMITED = new Budget(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, 0);
+
+    final long maxSteps;
+    final int maxStringLength;
+    final long maxAllocation;
+    final long timeoutNanos;
+
+    Budget(long maxSteps, int maxStringLength, long maxAllocation, long timeoutNanos) {
+        this.maxSteps = maxSteps;
+        this.maxStringLength = maxStringLength;
+        this.maxAllocation = maxAllocation;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    public Budget withMaxSteps(long maxSteps) {
+        return new Budget(maxSteps, this.maxStringLength, this.maxAllocation, this.timeoutNanos);
+    }
+
+    public Budget withMaxStringLength(int maxStringLength) {
+        return new Budget(this.maxSteps, maxStringLength, this.maxAllocation, this.timeoutNanos);
+    }
+
+    public Budget withMaxAllocation(long maxBytes) {
+        return new Budget(this.maxSteps, this.maxStringLength, maxBytes, this.timeoutNanos);
+    }
+
+    public Budget withTimeout(Duration timeout) {
+        return new Budget(this.maxSteps, this.maxStringLength, this.maxAllocation, timeout.toNanos());
+    }
+
+    Meter start() {
+        return new Meter(this);
+    }
+
+    // Counts down a small grant of steps and only does the real accounting,
+    // including reading the clock, when the grant runs out, so the common
+    // path is a decrement and a branch.
+    static final class Meter {
+        static final int CHECK_INTERVAL = 1024;
+
+        // The meter of the run on this thread, for code that has no Lox at
+        // hand, like string concatenation.
+        static final ThreadLocal<Meter> CURRENT = new ThreadLocal<>();
+
+        final Budget budget;
+        final long deadline;
+        long steps;
+        int granted;
+        int countdown;
+        long allocated;
+
+        Meter(Budget budget) {
+            this.budget = budget;
+            this.deadline = budget.timeoutNanos > 0 ? System.nanoTime() + budget.timeoutNanos : 0;
+            this.steps = 0;
+            this.allocated = 0;
+            this.grant();
+        }
+
+        void tick() {
+            if (--this.countdown < 0) this.refill();
+        }
+
+        void refill() {
+            this.steps += this.granted - this.countdown;
+            if (this.steps > this.budget.maxSteps) {
+                throw new BudgetExceededException(Limit.STEPS, "Step limit of " + this.budget.maxSteps + " exceeded");
+            }
+            if (this.deadline != 0 && System.nanoTime() - this.deadline > 0) {
+                throw new BudgetExceededException(Limit.DEADLINE, "Timeout of " + Duration.ofNanos(this.budget.timeoutNanos) + " exceeded");
+            }
+            this.grant();
+        }
+
+        void grant() {
+            this.granted = (int) Math.min(CHECK_INTERVAL, this.budget.maxSteps - this.steps);
+            this.countdown = this.granted;
+        }
+
+        // Hooks for code that builds strings or arrays for the script. Call
+        // them with the size about to be allocated, before allocating, so an
+        // oversized request fails without the memory ever being taken. They
+        // do nothing when the thread has no metered run.
+        static void chargeString(long length) {
+            Meter meter = CURRENT.get();
+            if (meter != null) meter.string(length);
+        }
+
+        // Fails if a string of length chars could not be charged, without
+        // charging it, for code whose result is charged later.
+        static void checkString(long length) {
+            Meter meter = CURRENT.get();
+            if (meter != null) meter.check(length);
+        }
+
+        // For ropes, whose logical length can be far more than what they
+        // copy: checkLength enforces the string length limit alone, and
+        // chargeChars charges only the chars actually copied.
+        static void checkLength(long length) {
+            Meter meter = CURRENT.get();
+            if (meter != null) meter.length(length);
+        }
+
+        static void chargeChars(long chars) {
+            Meter meter = CURRENT.get();
+            if (meter != null) meter.bytes(2 * chars);
+        }
+
+        static void chargeArray(long length) {
+            Meter meter = CURRENT.get();
+            if (meter != null) meter.bytes(8 * length);
+        }
+
+        void string(long length) {
+            this.check(length);
+            this.bytes(2 * length);
+        }
+
+        void length(long length) {
+            if (length > this.budget.maxStringLength) {
+                throw new BudgetExceededException(Limit.STRING_LENGTH, "String of " + length + " chars exceeds the limit of " + this.budget.maxStringLength);
+            }
+        }
+
+        void check(long length) {
+            this.length(length);
+            if (this.allocated + 2 * length > this.budget.maxAllocation) {
+                throw new BudgetExceededException(Limit.ALLOCATION, "Allocation limit of " + this.budget.maxAllocation + " bytes exceeded");
+            }
+        }
+
+        void bytes(long bytes) {
+            this.allocated += bytes;
+            if (this.allocated > this.budget.maxAllocation) {
+                throw new BudgetExceededException(Limit.ALLOCATION, "Allocation limit of " + this.budget.maxAllocation + " bytes exceeded");
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.jlox;
+
+// Aborts a run that went over its Budget. No stack trace is captured; the
+// limit says what was exceeded.
+public final class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    final Budget.Limit limit;
+
+    BudgetExceededException(Budget.Limit limit, String message) {
+        super(message, null, false, false);
+        this.limit = limit;
+    }
+
+    public Budget.Limit limit() {
+        return this.limit;
+    }
+}
@@ -0,0 +1,154 @@
+package com.jlox;
+
+// The functions every script can call. Each public static method here is
+// registered under its own name by Natives.builtins(), so names must not
+// be overloaded.
+final class Builtins {
+    private Builtins() {
+    }
+
+    // Seconds since the epoch.
+    public static double clock() {
+        return System.currentTimeMillis() / 1000.0;
+    }
+
+    public static double sqrt(double x) {
+        return Math.sqrt(x);
+    }
+
+    public static double pow(double x, double y) {
+        return Math.pow(x, y);
+    }
+
+    public static Object floor(double x) {
+        return integral(Math.floor(x));
+    }
+
+    public static Object ceil(double x) {
+        return integral(Math.ceil(x));
+    }
+
+    public static Object abs(Object x) {
+        // min(n, -n) is never positive; negate promotes Long.MIN_VALUE.
+        if (x instanceof Long n) return Numbers.negate(Math.min(n, -n));
+        return Math.abs(NativeFunction.toDouble(x));
+    }
+
+    // Element-wise when either argument is an array.
+    public static Object min(Object a, Object b) {
+        if (b instanceof NumberArray && !(a instanceof NumberArray)) return min(b, a);
+        if (a instanceof NumberArray x) {
+            if (b instanceof NumberArray y) return NumberArray.min(x.values, y.values);
+            return NumberArray.min(x.values, NativeFunction.toDouble(b));
+        }
+        return less(b, a) ? b : a;
+    }
+
+    public static Object max(Object a, Object b) {
+        if (b instanceof NumberArray && !(a instanceof NumberArray)) return max(b, a);
+        if (a instanceof NumberArray x) {
+            if (b instanceof NumberArray y) return NumberArray.max(x.values, y.values);
+            return NumberArray.max(x.values, NativeFunction.toDouble(b));
+        }
+        return less(a, b) ? b : a;
+    }
+
+    // The length of a string or an array.
+    public static long len(Object value) {
+        if (value instanceof NumberArray a) return a.values.length;
+        return NativeFunction.toText(value).length();
+    }
+
+    public static String upper(String s) {
+        return s.toUpperCase();
+    }
+
+    public static String lower(String s) {
+        return s.toLowerCase();
+    }
+
+    public static String trim(String s) {
+        return s.strip();
+    }
+
+    public static String substr(String s, int start, int end) {
+        if (start < 0 || start > end || end > s.length()) {
+            throw new RuntimeException("Range " + start + " to " + end + " out of bounds for length " + s.length());
+        }
+        return s.substring(start, end);
+    }
+
+    // -1 when part does not occur in s.
+    public static long indexOf(String s, String part) {
+        return s.indexOf(part);
+    }
+
+    public static boolean contains(String s, String part) {
+        return s.contains(part);
+    }
+
+    // The result is charged when it is returned, but its size is checked
+    // first so an over-limit count never allocates.
+    public static String repeat(String s, int count) {
+        if (count < 0) throw new RuntimeException("Negative repeat count " + count);
+        long length = (long) s.length() * count;
+        Budget.Meter.checkString(length);
+        if (length > Integer.MAX_VALUE - 8) throw new RuntimeException("String too long");
+        return s.repeat(count);
+    }
+
+    // The text print would show for value.
+    public static String str(Object value) {
+        return String.valueOf(value);
+    }
+
+    public static Object num(String s) {
+        String text = s.strip();
+        try {
+            return Numbers.box(Long.parseLong(text));
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(text);
+        }
+    }
+
+    // An array of length zeros.
+    public static double[] array(int length) {
+        if (length < 0) throw new RuntimeException("Negative array length " + length);
+        return NumberArray.allocate(length);
+    }
+
+    public static double sum(double[] a) {
+        return NumberArray.sum(a);
+    }
+
+    public static double dot(double[] a, double[] b) {
+        return NumberArray.dot(a, b);
+    }
+
+    // New arrays of the element-wise sum and product. Either argument may
+    // be a number, which then applies to every element.
+    public static double[] add(Object a, Object b) {
+        if (b instanceof NumberArray && !(a instanceof NumberArray)) return add(b, a);
+        double[] x = NumberArray.values(a);
+        if (b instanceof NumberArray y) return NumberArray.add(x, y.values);
+        return NumberArray.add(x, NativeFunction.toDouble(b));
+    }
+
+    public static double[] mul(Object a, Object b) {
+        if (b instanceof NumberArray && !(a instanceof NumberArray)) return mul(b, a);
+        double[] x = NumberArray.values(a);
+        if (b instanceof NumberArray y) return NumberArray.multiply(x, y.values);
+        return NumberArray.multiply(x, NativeFunction.toDouble(b));
+    }
+
+    static boolean less(Object a, Object b) {
+        if (a instanceof Long x && b instanceof Long y) return x < y;
+        return NativeFunction.toDouble(a) < NativeFunction.toDouble(b);
+    }
+
+    // Whole doubles within long range become integers.
+    static Object integral(double x) {
+        if (Math.abs(x) < 0x1p63) return Numbers.box((long) x);
+        return x;
+    }
+}
@@ -0,0 +1,59 @@
+package com.jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class Chunk {
+    byte[] code;
+    int[] lines;
+    int count;
+    List<Object> constants;
+    Map<Object, Integer> constantIndex;
+
+    Chunk() {
+        this.code = new byte[64];
+        this.lines = new int[64];
+        this.count = 0;
+        this.constants = new ArrayList<>();
+        this.constantIndex = new HashMap<>();
+    }
+
+    void write(byte b, int line) {
+        if (this.count == this.code.length) {
+            this.code = Arrays.copyOf(this.code, this.count * 2);
+            this.lines = Arrays.copyOf(this.lines, this.count * 2);
+        }
+        this.code[this.count] = b;
+        this.lines[this.count] = line;
+        this.count++;
+    }
+
+    void writeShort(int value, int line) {
+        this.write((byte) ((value >> 8) & 0xff), line);
+        this.write((byte) (value & 0xff), line);
+    }
+
+    void patchShort(int offset, int value) {
+        this.code[offset] = (byte) ((value >> 8) & 0xff);
+        this.code[offset + 1] = (byte) (value & 0xff);
+    }
+
+    int addConstant(Object value) {
+        Integer index = this.constantIndex.get(value);
+        if (index != null) return index;
+
+        if (this.constants.size() > 0xffff) {
+            throw new RuntimeException("Too many constants in one chunk");
+        }
+        this.constants.add(value);
+        this.constantIndex.put(value, this.constants.size() - 1);
+        return this.constants.size() - 1;
+    }
+
+    Object[] constantPool() {
+        return this.constants.toArray();
+    }
+}
@@ -0,0 +1,391 @@
+package com.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of a class file writer to emit one class of static methods.
+// Classes are written as version 49 so that no StackMapTable is needed; the
+// JVM verifies them by type inference instead.
+final class ClassEmitter {
+    static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ALOAD = 0x19;
+    static final int ASTORE = 0x3a;
+    static final int AALOAD = 0x32;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP_X2 = 0x5b;
+    static final int DUP2_X2 = 0x5e;
+    static final int SWAP = 0x5f;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int L2D = 0x8a;
+    static final int LCMP = 0x94;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESTATIC = 0xb8;
+
+    final String name;
+    final ByteArrayOutputStream poolBytes;
+    final DataOutputStream pool;
+    final Map<String, Integer> poolIndex;
+    int poolCount;
+    final List<byte[]> methods;
+
+    ClassEmitter(String name) {
+        this.name = name;
+        this.poolBytes = new ByteArrayOutputStream();
+        this.pool = new DataOutputStream(this.poolBytes);
+        this.poolIndex = new HashMap<>();
+        this.poolCount = 1;
+        this.methods = new ArrayList<>();
+    }
+
+    int entry(String key, int slots, PoolWriter writer) {
+        Integer index = this.poolIndex.get(key);
+        if (index != null) return index;
+        try {
+            writer.write(this.pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index = this.poolCount;
+        this.poolCount += slots;
+        if (this.poolCount > 0xffff) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        this.poolIndex.put(key, index);
+        return index;
+    }
+
+    interface PoolWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String s) {
+        return this.entry("U" + s, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(s);
+        });
+    }
+
+    int classRef(String internalName) {
+        int n = this.utf8(internalName);
+        return this.entry("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(n);
+        });
+    }
+
+    int string(String s) {
+        int n = this.utf8(s);
+        return this.entry("S" + s, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(n);
+        });
+    }
+
+    int longConstant(long value) {
+        return this.entry("J" + value, 2, out -> {
+            out.writeByte(5);
+            out.writeLong(value);
+        });
+    }
+
+    int doubleConstant(double d) {
+        long bits = Double.doubleToRawLongBits(d);
+        return this.entry("D" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    int nameAndType(String name, String desc) {
+        int n = this.utf8(name);
+        int d = this.utf8(desc);
+        return this.entry("N" + name + ":" + desc, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    int memberRef(int tag, String owner, String name, String desc) {
+        int c = this.classRef(owner);
+        int nt = this.nameAndType(name, desc);
+        return this.entry(tag + owner + "." + name + ":" + desc, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    int fieldRef(String owner, String name, String desc) {
+        return this.memberRef(9, owner, name, desc);
+    }
+
+    int methodRef(String owner, String name, String desc) {
+        return this.memberRef(10, owner, name, desc);
+    }
+
+    void addMethod(int access, String name, String desc, Code code) {
+        int nameIndex = this.utf8(name);
+        int descIndex = this.utf8(desc);
+        int codeIndex = this.utf8("Code");
+        byte[] bytecode = code.toBytes();
+        if (bytecode.length > 0xffff) {
+            throw new IllegalStateException("Method too large");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descIndex);
+            out.writeShort(1);
+            out.writeShort(codeIndex);
+            out.writeInt(12 + bytecode.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.methods.add(bytes.toByteArray());
+    }
+
+    byte[] toBytes() {
+        int thisClass = this.classRef(this.name);
+        int superClass = this.classRef("java/lang/Object");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(this.poolCount);
+            this.pool.flush();
+            this.poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(this.methods.size());
+            for (byte[] m : this.methods) {
+                out.write(m);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Stack words taken by a field or method descriptor's arguments, and
+    // pushed by its return type.
+    static int argumentWords(String desc) {
+        int words = 0;
+        int i = 1;
+        while (desc.charAt(i) != ')') {
+            char c = desc.charAt(i);
+            if (c == 'D' || c == 'J') {
+                words += 2;
+                i++;
+            } else if (c == 'L') {
+                words++;
+                i = desc.indexOf(';', i) + 1;
+            } else if (c == '[') {
+                while (desc.charAt(i) == '[') i++;
+                if (desc.charAt(i) == 'L') i = desc.indexOf(';', i);
+                words++;
+                i++;
+            } else {
+                words++;
+                i++;
+            }
+        }
+        return words;
+    }
+
+    static int returnWords(String desc) {
+        char c = desc.charAt(desc.indexOf(')') + 1);
+        if (c == 'V') return 0;
+        return c == 'D' || c == 'J' ? 2 : 1;
+    }
+
+    static final class Label {
+        int position = -1;
+        int stack = -1;
+        List<Integer> references = new ArrayList<>();
+    }
+
+    // A method body. Tracks stack depth as instructions are added so that
+    // max_stack comes out right; at a label the depth recorded by the first
+    // jump to it wins.
+    final class Code {
+        byte[] code;
+        int length;
+        int stack;
+        int maxStack;
+        int maxLocals;
+
+        Code(int maxLocals) {
+            this.code = new byte[256];
+            this.length = 0;
+            this.stack = 0;
+            this.maxStack = 0;
+            this.maxLocals = maxLocals;
+        }
+
+        void u1(int b) {
+            if (this.length == this.code.length) {
+                this.code = Arrays.copyOf(this.code, this.length * 2);
+            }
+            this.code[this.length++] = (byte) b;
+        }
+
+        void u2(int v) {
+            this.u1(v >> 8);
+            this.u1(v);
+        }
+
+        void adjust(int delta) {
+            this.stack += delta;
+            if (this.stack > this.maxStack) this.maxStack = this.stack;
+        }
+
+        void op(int opcode, int delta) {
+            this.u1(opcode);
+            this.adjust(delta);
+        }
+
+        void iconst(int value) {
+            if (value == 0 || value == 1) {
+                this.op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                this.op(BIPUSH, 1);
+                this.u1(value);
+            } else {
+                this.op(SIPUSH, 1);
+                this.u2(value);
+            }
+        }
+
+        void ldcString(String s) {
+            this.op(LDC_W, 1);
+            this.u2(ClassEmitter.this.string(s));
+        }
+
+        void ldcLong(long value) {
+            this.op(LDC2_W, 2);
+            this.u2(ClassEmitter.this.longConstant(value));
+        }
+
+        void ldcDouble(double d) {
+            this.op(LDC2_W, 2);
+            this.u2(ClassEmitter.this.doubleConstant(d));
+        }
+
+        void aload(int local) {
+            this.op(ALOAD, 1);
+            this.u1(local);
+        }
+
+        void astore(int local) {
+            this.op(ASTORE, -1);
+            this.u1(local);
+            if (local + 1 > this.maxLocals) this.maxLocals = local + 1;
+        }
+
+        void getstatic(String owner, String name, String desc) {
+            this.op(GETSTATIC, desc.equals("D") || desc.equals("J") ? 2 : 1);
+            this.u2(ClassEmitter.this.fieldRef(owner, name, desc));
+        }
+
+        void invokestatic(String owner, String name, String desc) {
+            this.op(INVOKESTATIC, returnWords(desc) - argumentWords(desc));
+            this.u2(ClassEmitter.this.methodRef(owner, name, desc));
+        }
+
+        void invokevirtual(String owner, String name, String desc) {
+            this.op(INVOKEVIRTUAL, returnWords(desc) - argumentWords(desc) - 1);
+            this.u2(ClassEmitter.this.methodRef(owner, name, desc));
+        }
+
+        void jump(int opcode, Label target) {
+            int at = this.length;
+            this.op(opcode, opcode == GOTO ? 0 : -1);
+            if (target.stack < 0) target.stack = this.stack;
+            if (target.position >= 0) {
+                if (target.position - at < Short.MIN_VALUE) {
+                    throw new IllegalStateException("Branch offset too large");
+                }
+                this.u2(target.position - at);
+            } else {
+                target.references.add(at);
+                this.u2(0);
+            }
+        }
+
+        void mark(Label label) {
+            label.position = this.length;
+            if (label.stack >= 0) this.stack = label.stack;
+            else label.stack = this.stack;
+            for (int at : label.references) {
+                int offset = label.position - at;
+                if (offset > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Branch offset too large");
+                }
+                this.code[at + 1] = (byte) (offset >> 8);
+                this.code[at + 2] = (byte) offset;
+            }
+        }
+
+        byte[] toBytes() {
+            return Arrays.copyOf(this.code, this.length);
+        }
+    }
+}
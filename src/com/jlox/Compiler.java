@@ -0,0 +1,236 @@
+package com.jlox;
+
+import java.util.List;
+
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    Chunk chunk;
+    int line;
+    // Emit a TICK before every statement, for runs with a Budget.
+    boolean ticks;
+
+    Compiler() {
+        this.chunk = new Chunk();
+        this.line = 0;
+        this.ticks = false;
+    }
+
+    Chunk compile(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            this.compile(stmt);
+        }
+        this.emit(OpCode.RETURN);
+        return this.chunk;
+    }
+
+    void emit(byte op) {
+        this.chunk.write(op, this.line);
+    }
+
+    void emit(byte op, int operand) {
+        if (operand > 0xffff) {
+            throw new RuntimeException("Line " + (this.line + 1) + ": " + "Operand " + operand + " does not fit in 16 bits");
+        }
+        this.chunk.write(op, this.line);
+        this.chunk.writeShort(operand, this.line);
+    }
+
+    // Global slots are 16-bit operands, so a chunk addresses at most 65536.
+    void emitSlot(byte op, int slot) {
+        if (slot > 0xffff) {
+            throw new RuntimeException("Line " + (this.line + 1) + ": " + "Too many global variables in one chunk");
+        }
+        this.emit(op, slot);
+    }
+
+    int emitJump(byte op) {
+        this.emit(op, 0xffff);
+        return this.chunk.count - 2;
+    }
+
+    void patchJump(int offset) {
+        int jump = this.chunk.count - offset - 2;
+        if (jump > 0xffff) {
+            throw new RuntimeException("Line " + (this.line + 1) + ": " + "Too much code to jump over");
+        }
+        this.chunk.patchShort(offset, jump);
+    }
+
+    void emitLoop(int start) {
+        int jump = this.chunk.count + 3 - start;
+        if (jump > 0xffff) {
+            throw new RuntimeException("Line " + (this.line + 1) + ": " + "Loop body too large");
+        }
+        this.emit(OpCode.LOOP, jump);
+    }
+
+    void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    void compile(Stmt stmt) {
+        if (this.ticks) this.emit(OpCode.TICK);
+        stmt.accept(this);
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        this.compile(expr.left);
+        this.compile(expr.right);
+        this.line = expr.operator.line;
+        switch (expr.operator.type) {
+            case TokenType.PLUS -> this.emit(OpCode.ADD);
+            case TokenType.MINUS -> this.emit(OpCode.SUBTRACT);
+            case TokenType.MULTIPLY -> this.emit(OpCode.MULTIPLY);
+            case TokenType.DIVIDE -> this.emit(OpCode.DIVIDE);
+            case TokenType.EQUALS -> this.emit(OpCode.EQUAL);
+            case TokenType.NOT_EQUALS -> this.emit(OpCode.NOT_EQUAL);
+            case TokenType.LESS_THAN -> this.emit(OpCode.LESS);
+            case TokenType.GREATER_THAN -> this.emit(OpCode.GREATER);
+            case TokenType.LESS_THAN_OR_EQUAL -> this.emit(OpCode.LESS_EQUAL);
+            case TokenType.GREATER_THAN_OR_EQUAL -> this.emit(OpCode.GREATER_EQUAL);
+            default -> {
+                this.emit(OpCode.POP);
+                this.emit(OpCode.POP);
+                this.emit(OpCode.NIL);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        this.compile(expr.value);
+        this.line = expr.name.line;
+        this.emitSlot(OpCode.SET_GLOBAL, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            this.emit(OpCode.NIL);
+        } else if (expr.value.equals(true)) {
+            this.emit(OpCode.TRUE);
+        } else if (expr.value.equals(false)) {
+            this.emit(OpCode.FALSE);
+        } else {
+            this.emit(OpCode.CONSTANT, this.chunk.addConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        this.line = expr.var.line;
+        this.emitSlot(OpCode.GET_GLOBAL, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        this.compile(expr.right);
+        this.line = expr.operator.line;
+        switch (expr.operator.type) {
+            case TokenType.NOT -> this.emit(OpCode.NOT);
+            case TokenType.MINUS -> this.emit(OpCode.NEGATE);
+            default -> {
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        this.compile(expr.left);
+        this.compile(expr.right);
+        this.line = expr.op.line;
+        this.emit(expr.op.type == TokenType.OR ? OpCode.OR : OpCode.AND);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        this.compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        for (Expr argument : expr.arguments) {
+            this.compile(argument);
+        }
+        this.line = expr.name.line;
+        this.emit(OpCode.CALL, this.chunk.addConstant(expr.function));
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        this.compile(expr.array);
+        this.compile(expr.index);
+        this.line = expr.bracket.line;
+        this.emit(OpCode.GET_INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        this.compile(expr.array);
+        this.compile(expr.index);
+        this.compile(expr.value);
+        this.line = expr.bracket.line;
+        this.emit(OpCode.SET_INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+        this.compile(stmt.expression);
+        this.emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.PrintStmt stmt) {
+        this.compile(stmt.expression);
+        this.emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Stmt.Block stmt) {
+        for (Stmt s : stmt.statements) {
+            this.compile(s);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.IfStmt stmt) {
+        this.compile(stmt.condition);
+        int elseJump = this.emitJump(OpCode.JUMP_IF_FALSE);
+        this.compile(stmt.thenBranch);
+
+        if (stmt.elseBranch == null) {
+            this.patchJump(elseJump);
+            return null;
+        }
+
+        int endJump = this.emitJump(OpCode.JUMP);
+        this.patchJump(elseJump);
+        this.compile(stmt.elseBranch);
+        this.patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.WhileStmt stmt) {
+        int start = this.chunk.count;
+        this.compile(stmt.condition);
+        int exitJump = this.emitJump(OpCode.JUMP_IF_FALSE);
+        this.compile(stmt.body);
+        this.emitLoop(start);
+        this.patchJump(exitJump);
+        return null;
+    }
+}
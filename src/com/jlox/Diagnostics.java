@@ -0,0 +1,65 @@
+package com.jlox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Collects scanner and parser errors so one pass over a file reports all of
+// them. Lines and columns are 1-based; column is 0 when unknown. Reporting
+// is synchronized because a TokenPipeline scans on its own thread.
+class Diagnostics {
+    record Diagnostic(int line, int column, String token, String message) {
+        @Override
+        public String toString() {
+            String at = this.token == null ? "" : " at '" + this.token + "'";
+            return this.line + ":" + this.column + ": " + this.message + at;
+        }
+    }
+
+    final List<Diagnostic> errors;
+
+    Diagnostics() {
+        this.errors = new ArrayList<>();
+    }
+
+    synchronized Diagnostic report(int line, int column, String token, String message) {
+        Diagnostic d = new Diagnostic(line, column, token, message);
+        this.errors.add(d);
+        return d;
+    }
+
+    Diagnostic report(Token token, String message) {
+        String text = token.type == TokenType.EOF ? "end of file" : token.lexeme.isEmpty() ? token.type.toString() : token.lexeme;
+        return this.report(token.line + 1, token.column + 1, text, message);
+    }
+
+    synchronized boolean hasErrors() {
+        return !this.errors.isEmpty();
+    }
+
+    // In source order; the scanner reports ahead of the parser.
+    synchronized List<Diagnostic> all() {
+        List<Diagnostic> all = new ArrayList<>(this.errors);
+        all.sort(Comparator.comparingInt(Diagnostic::line).thenComparingInt(Diagnostic::column));
+        return all;
+    }
+
+    void print(PrintStream out, String file) {
+        for (Diagnostic d : this.all()) {
+            out.println(file + ":" + d);
+        }
+    }
+
+    // Throws a ParseError listing every error so far, if there is one.
+    void check() {
+        List<Diagnostic> all = this.all();
+        if (all.isEmpty()) return;
+        StringBuilder message = new StringBuilder();
+        for (Diagnostic d : all) {
+            if (!message.isEmpty()) message.append('\n');
+            message.append(d);
+        }
+        throw new ParseError(message.toString());
+    }
+}
@@ -0,0 +1,62 @@
+package com.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs one Program against many inputs concurrently, one virtual thread per
+// execution. Nothing is shared between executions except the Program.
+public final class Engine implements AutoCloseable {
+    final ExecutorService executor;
+    final ProgramCache cache;
+    final Budget budget;
+
+    public Engine() {
+        this(new ProgramCache(1024, 64L * 1024 * 1024));
+    }
+
+    public Engine(ProgramCache cache) {
+        this(cache, Budget.UNLIMITED);
+    }
+
+    // Every execution submitted to this engine runs under budget.
+    public Engine(ProgramCache cache, Budget budget) {
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.cache = cache;
+        this.budget = budget;
+    }
+
+    public Program compile(String source) {
+        return this.cache.get(source);
+    }
+
+    public Future<Execution> submit(String source, Map<String, ?> inputs) {
+        return this.executor.submit(() -> this.compile(source).newExecution().budget(this.budget).setAll(inputs).run());
+    }
+
+    public Future<Execution> submit(Program program, Map<String, ?> inputs) {
+        return this.executor.submit(() -> program.newExecution().budget(this.budget).setAll(inputs).run());
+    }
+
+    public List<Execution> runAll(Program program, List<? extends Map<String, ?>> inputs)
+            throws InterruptedException, ExecutionException {
+        List<Future<Execution>> futures = new ArrayList<>(inputs.size());
+        for (Map<String, ?> input : inputs) {
+            futures.add(this.submit(program, input));
+        }
+        List<Execution> results = new ArrayList<>(futures.size());
+        for (Future<Execution> f : futures) {
+            results.add(f.get());
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        this.executor.close();
+    }
+}
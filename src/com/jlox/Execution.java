@@ -0,0 +1,69 @@
+package com.jlox;
+
+import java.util.Map;
+
+// Per-run state for a Program: the variable slots and the captured output.
+// An Execution is confined to one thread; share the Program instead.
+public final class Execution {
+    final Program program;
+    final Lox lox;
+    final OutputSink.Capture output;
+    Budget budget;
+
+    Execution(Program program) {
+        this.program = program;
+        this.output = new OutputSink.Capture();
+        this.lox = new Lox(new Object[program.slotCount()], this.output);
+        this.budget = Budget.UNLIMITED;
+    }
+
+    // Limits for run(). The clock for a timeout starts when run() is called.
+    public Execution budget(Budget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    public Execution set(String name, Object value) {
+        int slot = this.program.slotOf(name);
+        if (slot >= 0) {
+            this.lox.slots[slot] = toLox(value);
+        }
+        return this;
+    }
+
+    public Execution setAll(Map<String, ?> values) {
+        for (Map.Entry<String, ?> e : values.entrySet()) {
+            this.set(e.getKey(), e.getValue());
+        }
+        return this;
+    }
+
+    public Object get(String name) {
+        int slot = this.program.slotOf(name);
+        if (slot < 0) return null;
+        Object value = this.lox.slots[slot];
+        if (value instanceof NumberArray a) return a.values;
+        return Rope.flatten(value);
+    }
+
+    public Execution run() {
+        this.lox.meter = this.budget == Budget.UNLIMITED ? null : this.budget.start();
+        if (this.program.arena != null) this.lox.execute(this.program.arena);
+        else this.lox.execute(this.program.statements);
+        return this;
+    }
+
+    public String output() {
+        return this.output.contents();
+    }
+
+    static Object toLox(Object value) {
+        if (value instanceof Long n) return Numbers.box(n);
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) return Numbers.box(((Number) value).longValue());
+        if (value instanceof Number n && !(value instanceof Double)) return n.doubleValue();
+        if (value instanceof CharSequence cs && !(value instanceof String)) return cs.toString();
+        if (value instanceof Character c) return c.toString();
+        if (value instanceof double[] a) return new NumberArray(a);
+        return value;
+    }
+}
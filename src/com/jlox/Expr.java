@@ -1,5 +1,7 @@
 package com.jlox;
 
+import java.util.List;
+
 abstract class Expr {
     interface Visitor<R> {
         R visitBinaryExpr(Binary expr);
@@ -15,6 +17,12 @@ abstract class Expr {
         R visitLogicalExpr(Logical expr);
 
         R visitGroupingExpr(Grouping expr);
+
+        R visitCallExpr(Call expr);
+
+        R visitIndexExpr(Index expr);
+
+        R visitSetIndexExpr(SetIndex expr);
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -23,6 +31,7 @@ abstract class Expr {
         final Expr right;
         final Expr left;
         final Token operator;
+        BinaryNode node = BinaryNode.UNINITIALIZED;
 
         Binary(Expr left, Token operator, Expr right) {
             this.right = right;
@@ -38,6 +47,7 @@ abstract class Expr {
     static class Assign extends Expr {
         Token name;
         Expr value;
+        int slot = -1;
 
         Assign(Token name, Expr value) {
             this.name = name;
@@ -75,6 +85,7 @@ abstract class Expr {
 
     static class Variable extends Expr {
         final Token var;
+        int slot = -1;
 
         Variable(Token var) {
             this.var = var;
@@ -88,6 +99,7 @@ abstract class Expr {
     static class Unary extends Expr {
         final Token operator;
         final Expr right;
+        UnaryNode node = UnaryNode.UNINITIALIZED;
 
         Unary(Token operator, Expr right) {
             this.operator = operator;
@@ -103,6 +115,7 @@ abstract class Expr {
         final Expr left;
         final Token op;
         final Expr right;
+        LogicalNode node = LogicalNode.UNINITIALIZED;
 
         Logical(Expr left, Token op, Expr right) {
             this.left = left;
@@ -114,4 +127,54 @@ abstract class Expr {
             return visitor.visitLogicalExpr(this);
         }
     }
+
+    static class Call extends Expr {
+        final Token name;
+        final List<Expr> arguments;
+        // Bound by the Resolver.
+        NativeFunction function;
+
+        Call(Token name, List<Expr> arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitCallExpr(this);
+        }
+    }
+
+    static class Index extends Expr {
+        final Expr array;
+        final Token bracket;
+        final Expr index;
+
+        Index(Expr array, Token bracket, Expr index) {
+            this.array = array;
+            this.bracket = bracket;
+            this.index = index;
+        }
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexExpr(this);
+        }
+    }
+
+    static class SetIndex extends Expr {
+        final Expr array;
+        final Token bracket;
+        final Expr index;
+        final Expr value;
+
+        SetIndex(Expr array, Token bracket, Expr index, Expr value) {
+            this.array = array;
+            this.bracket = bracket;
+            this.index = index;
+            this.value = value;
+        }
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSetIndexExpr(this);
+        }
+    }
 }
@@ -0,0 +1,348 @@
+package com.jlox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Keeps a parsed script in sync with edits without re-parsing the whole file.
+//
+// The source is held as a list of lines and the program as a list of
+// top-level units, each remembering the lines its tokens span. An edit
+// re-scans only the lines of the units it touches (or just the edited lines
+// when it falls between units) and re-parses them; every other unit keeps
+// its Stmt subtree. Units after the edit are shifted by the line delta,
+// along with the Tokens in their subtrees, so runtime errors in reused code
+// still report the right line.
+//
+// If the re-parsed region does not end on a statement boundary, it is grown
+// by one unit at a time; edits that could open or close a multi-line string
+// fall back to a full parse. While the source has a syntax error the parser
+// keeps taking edits and re-parses fully until it is valid again.
+class IncrementalParser {
+    static class Unit {
+        final Stmt stmt;
+        int firstLine;
+        int lastLine;
+
+        Unit(Stmt stmt, int firstLine, int lastLine) {
+            this.stmt = stmt;
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+        }
+    }
+
+    List<String> lines;
+    List<Unit> units;
+    boolean valid;
+    int reparsedLines;
+    int reusedUnits;
+
+    IncrementalParser(String source) {
+        this.lines = splitLines(source);
+        this.units = new ArrayList<>();
+        this.reparseAll();
+    }
+
+    List<Stmt> statements() {
+        if (!this.valid) {
+            throw new RuntimeException("Error parsing source");
+        }
+        List<Stmt> stmts = new ArrayList<>(this.units.size());
+        for (Unit u : this.units) {
+            stmts.add(u.stmt);
+        }
+        return stmts;
+    }
+
+    String source() {
+        return String.join("", this.lines);
+    }
+
+    static List<String> splitLines(String source) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                lines.add(source.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        lines.add(source.substring(start));
+        return lines;
+    }
+
+    // Replaces the text between (startLine, startColumn) and (endLine, endColumn),
+    // both 0-based and end-exclusive, with text.
+    void edit(int startLine, int startColumn, int endLine, int endColumn, String text) {
+        String before = this.lines.get(startLine).substring(0, startColumn);
+        String after = this.lines.get(endLine).substring(endColumn);
+        List<String> replaced = splitLines(before + text + after);
+        if (endLine < this.lines.size() - 1) {
+            // Only the file's last line lacks a newline; drop the empty tail.
+            replaced.remove(replaced.size() - 1);
+        }
+        String removed = String.join("", this.lines.subList(startLine, endLine + 1));
+
+        this.lines.subList(startLine, endLine + 1).clear();
+        this.lines.addAll(startLine, replaced);
+        int delta = replaced.size() - (endLine - startLine + 1);
+
+        if (!this.valid || quotes(removed) % 2 != 0 || quotes(text) % 2 != 0) {
+            this.reparseAll();
+            return;
+        }
+
+        int first = this.firstUnitEndingAtOrAfter(startLine);
+        int last = first;
+        while (last < this.units.size() && this.units.get(last).firstLine <= endLine) {
+            last++;
+        }
+
+        int regionStart = startLine;
+        int regionEnd = endLine + delta;
+        if (first < last) {
+            regionStart = Math.min(regionStart, this.units.get(first).firstLine);
+            regionEnd = Math.max(regionEnd, this.units.get(last - 1).lastLine + delta);
+        }
+
+        while (true) {
+            List<Unit> parsed = this.parseRegion(regionStart, regionEnd);
+            if (parsed != null) {
+                this.splice(first, last, parsed, delta);
+                return;
+            }
+            if (last == this.units.size()) {
+                this.reparseAll();
+                return;
+            }
+            regionEnd = this.units.get(last).lastLine + delta;
+            last++;
+        }
+    }
+
+    static int quotes(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '"') n++;
+        }
+        return n;
+    }
+
+    int firstUnitEndingAtOrAfter(int line) {
+        int lo = 0;
+        int hi = this.units.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.units.get(mid).lastLine < line) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    void splice(int first, int last, List<Unit> parsed, int delta) {
+        for (int i = last; i < this.units.size(); i++) {
+            Unit u = this.units.get(i);
+            u.firstLine += delta;
+            u.lastLine += delta;
+            if (delta != 0) new Shift(delta).shift(u.stmt);
+        }
+        this.reusedUnits = this.units.size() - (last - first);
+        this.units.subList(first, last).clear();
+        this.units.addAll(first, parsed);
+    }
+
+    void reparseAll() {
+        List<Unit> parsed = this.parseRegion(0, this.lines.size() - 1);
+        this.reusedUnits = 0;
+        this.valid = parsed != null;
+        if (this.valid) {
+            this.units = parsed;
+        }
+    }
+
+    // Replaces the whole source with text, editing only the lines between
+    // the longest common prefix and suffix of the old and new text.
+    void replace(String text) {
+        List<String> updated = splitLines(text);
+        if (updated.equals(this.lines)) {
+            this.reparsedLines = 0;
+            this.reusedUnits = this.units.size();
+            return;
+        }
+        int prefix = 0;
+        int max = Math.min(this.lines.size(), updated.size());
+        while (prefix < max && this.lines.get(prefix).equals(updated.get(prefix))) {
+            prefix++;
+        }
+        // edit() replaces at least one old line, so leave one out of the
+        // prefix and suffix.
+        prefix = Math.min(prefix, this.lines.size() - 1);
+        int suffix = 0;
+        while (suffix < max - prefix - 1
+                && this.lines.get(this.lines.size() - 1 - suffix).equals(updated.get(updated.size() - 1 - suffix))) {
+            suffix++;
+        }
+        int endLine = this.lines.size() - 1 - suffix;
+        String inserted = String.join("", updated.subList(prefix, updated.size() - suffix));
+        this.edit(prefix, 0, endLine, this.lines.get(endLine).length(), inserted);
+    }
+
+    // Moves every token in a subtree by delta lines. Each token is moved
+    // once even if two nodes share it.
+    static class Shift implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        final int delta;
+        final Set<Token> moved;
+
+        Shift(int delta) {
+            this.delta = delta;
+            this.moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+
+        void shift(Stmt stmt) {
+            if (stmt != null) stmt.accept(this);
+        }
+
+        void shift(Expr expr) {
+            expr.accept(this);
+        }
+
+        void shift(Token token) {
+            if (this.moved.add(token)) token.line += this.delta;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            this.shift(expr.operator);
+            this.shift(expr.left);
+            this.shift(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            this.shift(expr.name);
+            this.shift(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            this.shift(expr.var);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            this.shift(expr.operator);
+            this.shift(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            this.shift(expr.op);
+            this.shift(expr.left);
+            this.shift(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            this.shift(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            this.shift(expr.name);
+            for (Expr argument : expr.arguments) {
+                this.shift(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr) {
+            this.shift(expr.bracket);
+            this.shift(expr.array);
+            this.shift(expr.index);
+            return null;
+        }
+
+        @Override
+        public Void visitSetIndexExpr(Expr.SetIndex expr) {
+            this.shift(expr.bracket);
+            this.shift(expr.array);
+            this.shift(expr.index);
+            this.shift(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            this.shift(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.PrintStmt stmt) {
+            this.shift(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitBlock(Stmt.Block stmt) {
+            for (Stmt s : stmt.statements) {
+                this.shift(s);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.IfStmt stmt) {
+            this.shift(stmt.condition);
+            this.shift(stmt.thenBranch);
+            this.shift(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.WhileStmt stmt) {
+            this.shift(stmt.condition);
+            this.shift(stmt.body);
+            return null;
+        }
+    }
+
+    // Parses lines [from, to] into units, or returns null if the text does not
+    // form complete statements on its own.
+    List<Unit> parseRegion(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i <= to && i < this.lines.size(); i++) {
+            text.append(this.lines.get(i));
+        }
+        this.reparsedLines = to - from + 1;
+
+        Scanner scanner = new Scanner(text.toString());
+        scanner.line = from;
+        TokenStream tokens = TokenStream.of(scanner.scanTokens());
+        Interpreter parser = new Interpreter(tokens, scanner.diagnostics);
+
+        List<Unit> parsed = new ArrayList<>();
+        while (!parser.isAtEnd()) {
+            int firstLine = tokens.peekToken().line;
+            Stmt stmt = parser.declaration();
+            if (parser.diagnostics.hasErrors()) return null;
+            parsed.add(new Unit(stmt, firstLine, tokens.previous().line));
+        }
+        if (parser.diagnostics.hasErrors()) return null;
+        return parsed;
+    }
+}
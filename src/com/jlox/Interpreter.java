@@ -5,17 +5,25 @@ import java.util.List;
 import java.util.Objects;
 
 class Interpreter {
-    List<Token> tokens;
-    int current;
+    TokenStream tokens;
+    Diagnostics diagnostics;
 
     Interpreter(List<Token> tokens) {
+        this(TokenStream.of(tokens));
+    }
+
+    Interpreter(TokenStream tokens) {
+        this(tokens, tokens.diagnostics() != null ? tokens.diagnostics() : new Diagnostics());
+    }
+
+    Interpreter(TokenStream tokens, Diagnostics diagnostics) {
         this.tokens = tokens;
-        this.current = 0;
+        this.diagnostics = diagnostics;
     }
 
     boolean check(TokenType token) {
         if (isAtEnd()) return false;
-        return this.tokens.get(this.current).type == token;
+        return this.tokens.peekType() == token;
     }
 
     boolean match(TokenType... tokens) {
@@ -29,50 +37,92 @@ class Interpreter {
     }
 
     Token getCurrentToken() {
-        if (this.current >= this.tokens.size()) {
-            return null;
-        }
-        return this.tokens.get(this.current);
+        return this.tokens.peekToken();
     }
 
     boolean isAtEnd() {
-        return this.current >= this.tokens.size() || (this.getCurrentToken() != null && this.getCurrentToken().type == TokenType.EOF);
+        return this.tokens.peekType() == TokenType.EOF;
     }
 
     void eat(TokenType t, String errorMessage) {
-        Token c = this.getCurrentToken();
-        if (t != c.type) {
-            if (!Objects.equals(errorMessage, "")) throw new RuntimeException(errorMessage);
+        if (t != this.tokens.peekType()) {
+            Token c = this.getCurrentToken();
+            if (!Objects.equals(errorMessage, "")) throw error(c, errorMessage);
             else
-                throw new RuntimeException("Line " + (c.line + 1) + ": " + "Expected " + t + " have " + this.getCurrentToken().type);
+                throw error(c, "Expected " + t + " have " + c.type);
         }
-        this.current++;
+        this.tokens.advance();
+    }
+
+    ParseError error(Token token, String message) {
+        return new ParseError(this.diagnostics.report(token, message).toString());
+    }
+
+    // Panic mode: skip to the next token that can start or end a statement.
+    // Always consumes at least one token so a stray one cannot stall us.
+    void synchronize() {
+        do {
+            TokenType t = this.tokens.peekType();
+            this.tokens.advance();
+            if (t == TokenType.SEMICOLON) return;
+            switch (this.tokens.peekType()) {
+                case TokenType.PRINT, TokenType.IF, TokenType.WHILE, TokenType.FOR, TokenType.RIGHT_BRACE -> {
+                    return;
+                }
+                default -> {
+                }
+            }
+        } while (!isAtEnd());
     }
 
     Token peek() {
         if (isAtEnd()) return null;
-        return this.tokens.get(this.current);
+        return this.getCurrentToken();
     }
 
+    // Throws a ParseError listing every scanner and parser error, if any.
     List<Stmt> Parse() {
+        List<Stmt> x = this.parseAll();
+        this.diagnostics.check();
+        return x;
+    }
+
+    // Parses the whole input, leaving errors in diagnostics.
+    List<Stmt> parseAll() {
         List<Stmt> x = new ArrayList<>();
         while (!isAtEnd()) {
-            x.add(declaration());
+            Stmt s = declaration();
+            if (s != null) x.add(s);
         }
         return x;
     }
 
+    // Statements are run as they arrive, so stop at the first error.
+    Stmt next() {
+        if (isAtEnd()) {
+            this.diagnostics.check();
+            return null;
+        }
+        Stmt s = declaration();
+        this.diagnostics.check();
+        return s;
+    }
+
     Stmt declaration() {
-        return statement();
+        try {
+            return statement();
+        } catch (ParseError e) {
+            this.synchronize();
+            return null;
+        }
     }
 
     Stmt statement() {
         if (match(TokenType.PRINT)) return printStatement();
         if (match(TokenType.IF)) return ifStatement();
-
-//        if (match(TokenType.LEFT_BRACE)) {
-//            return block();
-//        }
+        if (match(TokenType.WHILE)) return whileStatement();
+        if (match(TokenType.FOR)) return forStatement();
+        if (check(TokenType.LEFT_BRACE)) return block();
 
         return expressionStmt();
     }
@@ -80,9 +130,11 @@ class Interpreter {
     Stmt block() {
         List<Stmt> stmts = new ArrayList<>();
         this.eat(TokenType.LEFT_BRACE, "");
-        while (!match(TokenType.RIGHT_BRACE) && !isAtEnd()) {
-            stmts.add(statement());
+        while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+            Stmt s = declaration();
+            if (s != null) stmts.add(s);
         }
+        this.eat(TokenType.RIGHT_BRACE, "Missing } at the end of block");
         return new Stmt.Block(stmts);
     }
 
@@ -100,6 +152,36 @@ class Interpreter {
         return new Stmt.IfStmt(e, ifBlock, elseBlock);
     }
 
+    Stmt whileStatement() {
+        this.eat(TokenType.LEFT_PAREN, "Missing ( at the start of while-condition");
+        Expr e = expression();
+        this.eat(TokenType.RIGHT_PAREN, "Missing ) at the end of while-condition");
+        return new Stmt.WhileStmt(e, block());
+    }
+
+    // for (init; condition; increment) { body } is parsed as
+    // { init; while (condition) { { body } increment; } }
+    Stmt forStatement() {
+        this.eat(TokenType.LEFT_PAREN, "Missing ( at the start of for-clauses");
+        Stmt initializer = null;
+        if (!match(TokenType.SEMICOLON)) initializer = expressionStmt();
+
+        Expr condition = check(TokenType.SEMICOLON) ? new Expr.Literal(true) : expression();
+        this.eat(TokenType.SEMICOLON, "Missing ; after for-condition");
+        Expr increment = check(TokenType.RIGHT_PAREN) ? null : expression();
+        this.eat(TokenType.RIGHT_PAREN, "Missing ) at the end of for-clauses");
+
+        Stmt body = block();
+        if (increment != null) {
+            body = new Stmt.Block(new ArrayList<>(List.of(body, new Stmt.ExpressionStmt(increment))));
+        }
+        Stmt loop = new Stmt.WhileStmt(condition, body);
+        if (initializer != null) {
+            loop = new Stmt.Block(new ArrayList<>(List.of(initializer, loop)));
+        }
+        return loop;
+    }
+
     Stmt printStatement() {
         this.eat(TokenType.LEFT_PAREN, "");
         Expr e = expression();
@@ -120,7 +202,7 @@ class Interpreter {
     }
 
     Token previous() {
-        return this.tokens.get(this.current - 1);
+        return this.tokens.previous();
     }
 
     Expr assignment() {
@@ -131,8 +213,11 @@ class Interpreter {
             if (left instanceof Expr.Variable) {
                 Token name = ((Expr.Variable) left).var;
                 return new Expr.Assign(name, right);
+            } else if (left instanceof Expr.Index index) {
+                return new Expr.SetIndex(index.array, index.bracket, index.index, right);
             } else {
-                throw new RuntimeException("Invalid assignment target " + eq);
+                // Reported without unwinding; the parser is not confused.
+                this.diagnostics.report(eq, "Invalid assignment target");
             }
         }
         return left;
@@ -205,7 +290,18 @@ class Interpreter {
             return new Expr.Unary(op, right);
         }
 
-        return primary();
+        return index();
+    }
+
+    Expr index() {
+        Expr expr = primary();
+        while (match(TokenType.LEFT_BRACKET)) {
+            Token bracket = previous();
+            Expr index = expression();
+            this.eat(TokenType.RIGHT_BRACKET, "Expected ] after index");
+            expr = new Expr.Index(expr, bracket, index);
+        }
+        return expr;
     }
 
     Expr primary() {
@@ -213,6 +309,9 @@ class Interpreter {
         if (match(TokenType.FALSE)) return new Expr.Literal(false);
         if (match(TokenType.NIL)) return new Expr.Literal(null);
         if (match(TokenType.NUMBER)) {
+            return new Expr.Literal(Numbers.parse((String) previous().literal));
+        }
+        if (match(TokenType.FLOAT)) {
             return new Expr.Literal(Double.parseDouble((String) previous().literal));
         }
         if (match(TokenType.STRING)) {
@@ -220,7 +319,9 @@ class Interpreter {
         }
 
         if (match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
+            Token name = previous();
+            if (match(TokenType.LEFT_PAREN)) return this.finishCall(name);
+            return new Expr.Variable(name);
         }
         if (match(TokenType.LEFT_PAREN)) {
             Expr expr = expression();
@@ -228,6 +329,17 @@ class Interpreter {
             return new Expr.Grouping(expr);
         }
 
-        throw new RuntimeException("Error parsing source");
+        throw error(this.getCurrentToken(), "Expected expression");
+    }
+
+    Expr finishCall(Token name) {
+        List<Expr> arguments = new ArrayList<>();
+        if (!check(TokenType.RIGHT_PAREN)) {
+            do {
+                arguments.add(expression());
+            } while (match(TokenType.COMMA));
+        }
+        this.eat(TokenType.RIGHT_PAREN, "Expected ) after arguments");
+        return new Expr.Call(name, arguments);
     }
 }
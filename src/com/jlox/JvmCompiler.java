@@ -0,0 +1,585 @@
+package com.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Translates statements into a static method
+//
+//   static void run(Lox rt, Object[] slots, NativeFunction[] natives)
+//
+// of a hidden class in this package, and binds natives to the functions the
+// statements call. Variables live in Object locals that are loaded from the
+// slot array on entry and written through on every assignment, so the slots
+// stay current even if the method throws. Number subexpressions stay unboxed
+// longs or doubles on the operand stack; anything whose type is not known
+// statically goes through JvmRuntime.
+class JvmCompiler implements Expr.Visitor<JvmCompiler.Type>, Stmt.Visitor<Void> {
+    enum Type {
+        DOUBLE,
+        LONG,
+        BOOLEAN,
+        OBJECT;
+
+        boolean isNumber() {
+            return this == DOUBLE || this == LONG;
+        }
+    }
+
+    static final String LOX = "com/jlox/Lox";
+    static final String RUNTIME = "com/jlox/JvmRuntime";
+    static final String NUMBERS = "com/jlox/Numbers";
+    static final String OBJECT = "Ljava/lang/Object;";
+    static final String NATIVE = "com/jlox/NativeFunction";
+    static final String ARRAY = "com/jlox/NumberArray";
+    static final String RUN_DESC = "(Lcom/jlox/Lox;[Ljava/lang/Object;[L" + NATIVE + ";)V";
+    static final MethodType RUN_TYPE = MethodType.methodType(void.class, Lox.class, Object[].class, NativeFunction[].class);
+
+    static final int RT = 0;
+    static final int SLOTS = 1;
+    static final int NATIVES = 2;
+
+    ClassEmitter emitter;
+    ClassEmitter.Code code;
+    Map<Integer, Integer> locals;
+    Map<NativeFunction, Integer> natives;
+
+    JvmCompiler() {
+        this.emitter = new ClassEmitter("com/jlox/Compiled");
+        this.code = this.emitter.new Code(3);
+        this.locals = new HashMap<>();
+        this.natives = new LinkedHashMap<>();
+    }
+
+    // Returns a handle of type (Lox, Object[])void.
+    static MethodHandle compile(List<Stmt> stmts) {
+        JvmCompiler compiler = new JvmCompiler();
+        byte[] bytes = compiler.emit(stmts);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run", RUN_TYPE);
+            NativeFunction[] natives = compiler.natives.keySet().toArray(new NativeFunction[0]);
+            return MethodHandles.insertArguments(run, NATIVES, (Object) natives);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load compiled program", e);
+        }
+    }
+
+    byte[] emit(List<Stmt> stmts) {
+        new SlotCollector(this).collect(stmts);
+        for (Map.Entry<Integer, Integer> e : this.locals.entrySet()) {
+            this.code.aload(SLOTS);
+            this.code.iconst(e.getKey());
+            this.code.op(ClassEmitter.AALOAD, -1);
+            this.code.astore(e.getValue());
+        }
+        for (Stmt stmt : stmts) {
+            this.compile(stmt);
+        }
+        this.code.op(ClassEmitter.RETURN, 0);
+        this.emitter.addMethod(ClassEmitter.ACC_PUBLIC | ClassEmitter.ACC_STATIC, "run", RUN_DESC, this.code);
+        return this.emitter.toBytes();
+    }
+
+    int local(int slot) {
+        Integer local = this.locals.get(slot);
+        if (local == null) {
+            local = NATIVES + 1 + this.locals.size();
+            if (local > 0xff) {
+                throw new IllegalStateException("Too many variables to compile");
+            }
+            this.locals.put(slot, local);
+        }
+        return local;
+    }
+
+    // Every statement ticks the run's Budget, if it has one. Compiled loops
+    // are shared by all runs of a Program, so this is not decided here.
+    void compile(Stmt stmt) {
+        this.code.aload(RT);
+        this.code.invokevirtual(LOX, "tick", "()V");
+        stmt.accept(this);
+    }
+
+    Type compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    void box(Type type) {
+        switch (type) {
+            case DOUBLE -> this.code.invokestatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+            case LONG -> this.code.invokestatic(NUMBERS, "box", "(J)Ljava/lang/Long;");
+            case BOOLEAN -> this.code.invokestatic("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+            case OBJECT -> {
+            }
+        }
+    }
+
+    void compileBoxed(Expr expr) {
+        this.box(this.compile(expr));
+    }
+
+    void truth(Type type) {
+        switch (type) {
+            case DOUBLE, LONG -> {
+                this.code.op(ClassEmitter.POP2, -2);
+                this.code.iconst(1);
+            }
+            case BOOLEAN -> {
+            }
+            case OBJECT -> this.code.invokestatic(RUNTIME, "truth", "(" + OBJECT + ")Z");
+        }
+    }
+
+    void pop(Type type) {
+        if (type.isNumber()) this.code.op(ClassEmitter.POP2, -2);
+        else this.code.op(ClassEmitter.POP, -1);
+    }
+
+    // Leaves 1 or 0 on the stack depending on the branch condition.
+    void condition(int opcode) {
+        ClassEmitter.Label no = new ClassEmitter.Label();
+        ClassEmitter.Label end = new ClassEmitter.Label();
+        this.code.jump(opcode, no);
+        this.code.iconst(1);
+        this.code.jump(ClassEmitter.GOTO, end);
+        this.code.mark(no);
+        this.code.iconst(0);
+        this.code.mark(end);
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        TokenType op = expr.operator.type;
+        Type left = this.compile(expr.left);
+        if (!left.isNumber()) this.box(left);
+        Type right = this.compile(expr.right);
+
+        if (left.isNumber() && right.isNumber()) {
+            if (left == Type.LONG && right == Type.LONG) return this.longOperator(op);
+            // Mixed integers and doubles meet as doubles.
+            if (right == Type.LONG) this.code.op(ClassEmitter.L2D, 0);
+            if (left == Type.LONG) {
+                // Bring the long out from under the double, widen it, and
+                // put it back underneath.
+                this.code.op(ClassEmitter.DUP2_X2, 2);
+                this.code.op(ClassEmitter.POP2, -2);
+                this.code.op(ClassEmitter.L2D, 0);
+                this.code.op(ClassEmitter.DUP2_X2, 2);
+                this.code.op(ClassEmitter.POP2, -2);
+            }
+            return this.doubleOperator(op);
+        }
+
+        this.box(right);
+        if (left.isNumber()) {
+            // Box the left operand now that the right one sits above it.
+            this.code.op(ClassEmitter.DUP_X2, 1);
+            this.code.op(ClassEmitter.POP, -1);
+            this.box(left);
+            this.code.op(ClassEmitter.SWAP, 0);
+        }
+        return this.objectOperator(op);
+    }
+
+    Type doubleOperator(TokenType op) {
+        switch (op) {
+            case TokenType.PLUS -> this.code.op(ClassEmitter.DADD, -2);
+            case TokenType.MINUS -> this.code.op(ClassEmitter.DSUB, -2);
+            case TokenType.MULTIPLY -> this.code.op(ClassEmitter.DMUL, -2);
+            case TokenType.DIVIDE -> this.code.op(ClassEmitter.DDIV, -2);
+            case TokenType.LESS_THAN -> this.compare(ClassEmitter.DCMPG, ClassEmitter.IFGE);
+            case TokenType.LESS_THAN_OR_EQUAL -> this.compare(ClassEmitter.DCMPG, ClassEmitter.IFGT);
+            case TokenType.GREATER_THAN -> this.compare(ClassEmitter.DCMPL, ClassEmitter.IFLE);
+            case TokenType.GREATER_THAN_OR_EQUAL -> this.compare(ClassEmitter.DCMPL, ClassEmitter.IFLT);
+            case TokenType.EQUALS, TokenType.NOT_EQUALS -> {
+                // Double.compare matches Double.equals, which is what Objects.equals uses.
+                this.code.invokestatic("java/lang/Double", "compare", "(DD)I");
+                this.condition(op == TokenType.EQUALS ? ClassEmitter.IFNE : ClassEmitter.IFEQ);
+            }
+            default -> {
+                this.pop(Type.DOUBLE);
+                this.pop(Type.DOUBLE);
+                this.code.op(ClassEmitter.ACONST_NULL, 1);
+                return Type.OBJECT;
+            }
+        }
+        return op == TokenType.PLUS || op == TokenType.MINUS || op == TokenType.MULTIPLY || op == TokenType.DIVIDE
+                ? Type.DOUBLE : Type.BOOLEAN;
+    }
+
+    // Integer arithmetic can overflow into a double, so its result is only
+    // known to be an Object.
+    Type longOperator(TokenType op) {
+        String longs = "(JJ)" + OBJECT;
+        switch (op) {
+            case TokenType.PLUS -> this.code.invokestatic(NUMBERS, "add", longs);
+            case TokenType.MINUS -> this.code.invokestatic(NUMBERS, "subtract", longs);
+            case TokenType.MULTIPLY -> this.code.invokestatic(NUMBERS, "multiply", longs);
+            case TokenType.DIVIDE -> this.code.invokestatic(NUMBERS, "divide", longs);
+            case TokenType.LESS_THAN -> this.compare(ClassEmitter.LCMP, ClassEmitter.IFGE);
+            case TokenType.LESS_THAN_OR_EQUAL -> this.compare(ClassEmitter.LCMP, ClassEmitter.IFGT);
+            case TokenType.GREATER_THAN -> this.compare(ClassEmitter.LCMP, ClassEmitter.IFLE);
+            case TokenType.GREATER_THAN_OR_EQUAL -> this.compare(ClassEmitter.LCMP, ClassEmitter.IFLT);
+            case TokenType.EQUALS -> this.compare(ClassEmitter.LCMP, ClassEmitter.IFNE);
+            case TokenType.NOT_EQUALS -> this.compare(ClassEmitter.LCMP, ClassEmitter.IFEQ);
+            default -> {
+                this.pop(Type.LONG);
+                this.pop(Type.LONG);
+                this.code.op(ClassEmitter.ACONST_NULL, 1);
+                return Type.OBJECT;
+            }
+        }
+        return op == TokenType.PLUS || op == TokenType.MINUS || op == TokenType.MULTIPLY || op == TokenType.DIVIDE
+                ? Type.OBJECT : Type.BOOLEAN;
+    }
+
+    Type objectOperator(TokenType op) {
+        String objects = "(" + OBJECT + OBJECT + ")";
+        switch (op) {
+            case TokenType.PLUS -> this.code.invokestatic(RUNTIME, "add", objects + OBJECT);
+            case TokenType.MINUS -> this.code.invokestatic(RUNTIME, "subtract", objects + OBJECT);
+            case TokenType.MULTIPLY -> this.code.invokestatic(RUNTIME, "multiply", objects + OBJECT);
+            case TokenType.DIVIDE -> this.code.invokestatic(RUNTIME, "divide", objects + OBJECT);
+            case TokenType.LESS_THAN -> this.code.invokestatic(RUNTIME, "less", objects + "Z");
+            case TokenType.LESS_THAN_OR_EQUAL -> this.code.invokestatic(RUNTIME, "lessEqual", objects + "Z");
+            case TokenType.GREATER_THAN -> this.code.invokestatic(RUNTIME, "greater", objects + "Z");
+            case TokenType.GREATER_THAN_OR_EQUAL -> this.code.invokestatic(RUNTIME, "greaterEqual", objects + "Z");
+            case TokenType.EQUALS, TokenType.NOT_EQUALS -> {
+                this.code.invokestatic(RUNTIME, "equal", objects + "Z");
+                if (op == TokenType.NOT_EQUALS) {
+                    this.code.iconst(1);
+                    this.code.op(ClassEmitter.IXOR, -1);
+                }
+            }
+            default -> {
+                this.pop(Type.OBJECT);
+                this.pop(Type.OBJECT);
+                this.code.op(ClassEmitter.ACONST_NULL, 1);
+                return Type.OBJECT;
+            }
+        }
+        return op == TokenType.PLUS || op == TokenType.MINUS || op == TokenType.MULTIPLY || op == TokenType.DIVIDE
+                ? Type.OBJECT : Type.BOOLEAN;
+    }
+
+    void compare(int cmp, int falseJump) {
+        this.code.op(cmp, -3);
+        this.condition(falseJump);
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        this.compileBoxed(expr.value);
+        int local = this.local(expr.slot);
+        this.code.op(ClassEmitter.DUP, 1);
+        this.code.astore(local);
+        this.code.aload(SLOTS);
+        this.code.iconst(expr.slot);
+        this.code.aload(local);
+        this.code.op(ClassEmitter.AASTORE, -3);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value instanceof Double d) {
+            this.code.ldcDouble(d);
+            return Type.DOUBLE;
+        }
+        if (value instanceof Long l) {
+            this.code.ldcLong(l);
+            return Type.LONG;
+        }
+        if (value instanceof Boolean b) {
+            this.code.iconst(b ? 1 : 0);
+            return Type.BOOLEAN;
+        }
+        if (value instanceof String s) {
+            this.code.ldcString(s);
+            return Type.OBJECT;
+        }
+        if (value == null) {
+            this.code.op(ClassEmitter.ACONST_NULL, 1);
+            return Type.OBJECT;
+        }
+        throw new IllegalStateException("Cannot compile literal of type " + value.getClass());
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        this.code.aload(this.local(expr.slot));
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        Type right = this.compile(expr.right);
+        switch (expr.operator.type) {
+            case TokenType.MINUS -> {
+                if (right == Type.DOUBLE) {
+                    this.code.op(ClassEmitter.DNEG, 0);
+                    return Type.DOUBLE;
+                }
+                if (right == Type.LONG) {
+                    this.code.invokestatic(NUMBERS, "negate", "(J)" + OBJECT);
+                } else {
+                    this.box(right);
+                    this.code.invokestatic(RUNTIME, "negate", "(" + OBJECT + ")" + OBJECT);
+                }
+                return Type.OBJECT;
+            }
+            case TokenType.NOT -> {
+                if (right == Type.BOOLEAN) {
+                    this.code.iconst(1);
+                    this.code.op(ClassEmitter.IXOR, -1);
+                } else {
+                    this.box(right);
+                    this.code.invokestatic(RUNTIME, "not", "(" + OBJECT + ")Z");
+                }
+                return Type.BOOLEAN;
+            }
+            case TokenType.PLUS -> {
+                if (right.isNumber()) return right;
+                this.box(right);
+                this.code.invokestatic(RUNTIME, "plus", "(" + OBJECT + ")" + OBJECT);
+                return Type.OBJECT;
+            }
+            default -> {
+                return right;
+            }
+        }
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        this.truth(this.compile(expr.left));
+        this.truth(this.compile(expr.right));
+        this.code.op(expr.op.type == TokenType.OR ? ClassEmitter.IOR : ClassEmitter.IAND, -1);
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return this.compile(expr.expression);
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        int arity = expr.arguments.size();
+        if (arity > NativeFunction.MAX_DIRECT) {
+            throw new IllegalStateException("Too many arguments to compile");
+        }
+        Integer index = this.natives.get(expr.function);
+        if (index == null) {
+            index = this.natives.size();
+            this.natives.put(expr.function, index);
+        }
+        this.code.aload(NATIVES);
+        this.code.iconst(index);
+        this.code.op(ClassEmitter.AALOAD, -1);
+        for (Expr argument : expr.arguments) {
+            this.compileBoxed(argument);
+        }
+        this.code.invokevirtual(NATIVE, "call", "(" + OBJECT.repeat(arity) + ")" + OBJECT);
+        return Type.OBJECT;
+    }
+
+    // Elements are doubles, so reads, and writes of numbers, stay unboxed.
+    @Override
+    public Type visitIndexExpr(Expr.Index expr) {
+        this.compileBoxed(expr.array);
+        this.compileBoxed(expr.index);
+        this.code.invokestatic(ARRAY, "load", "(" + OBJECT + OBJECT + ")D");
+        return Type.DOUBLE;
+    }
+
+    @Override
+    public Type visitSetIndexExpr(Expr.SetIndex expr) {
+        this.compileBoxed(expr.array);
+        this.compileBoxed(expr.index);
+        Type value = this.compile(expr.value);
+        if (!value.isNumber()) {
+            this.box(value);
+            this.code.invokestatic(ARRAY, "set", "(" + OBJECT + OBJECT + OBJECT + ")" + OBJECT);
+            return Type.OBJECT;
+        }
+        if (value == Type.LONG) this.code.op(ClassEmitter.L2D, 0);
+        this.code.invokestatic(ARRAY, "store", "(" + OBJECT + OBJECT + "D)D");
+        return Type.DOUBLE;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+        this.pop(this.compile(stmt.expression));
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.PrintStmt stmt) {
+        this.code.aload(RT);
+        this.compileBoxed(stmt.expression);
+        this.code.invokevirtual(LOX, "print", "(" + OBJECT + ")V");
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Stmt.Block stmt) {
+        for (Stmt s : stmt.statements) {
+            this.compile(s);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.IfStmt stmt) {
+        ClassEmitter.Label otherwise = new ClassEmitter.Label();
+        this.truth(this.compile(stmt.condition));
+        this.code.jump(ClassEmitter.IFEQ, otherwise);
+        this.compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            this.code.mark(otherwise);
+            return null;
+        }
+        ClassEmitter.Label end = new ClassEmitter.Label();
+        this.code.jump(ClassEmitter.GOTO, end);
+        this.code.mark(otherwise);
+        this.compile(stmt.elseBranch);
+        this.code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.WhileStmt stmt) {
+        ClassEmitter.Label top = new ClassEmitter.Label();
+        ClassEmitter.Label exit = new ClassEmitter.Label();
+        this.code.mark(top);
+        this.truth(this.compile(stmt.condition));
+        this.code.jump(ClassEmitter.IFEQ, exit);
+        this.compile(stmt.body);
+        this.code.jump(ClassEmitter.GOTO, top);
+        this.code.mark(exit);
+        return null;
+    }
+
+    // Assigns a local to every slot the statements touch before any code is
+    // emitted, so the prologue can load them all.
+    static class SlotCollector implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        final JvmCompiler compiler;
+
+        SlotCollector(JvmCompiler compiler) {
+            this.compiler = compiler;
+        }
+
+        void collect(List<Stmt> stmts) {
+            for (Stmt stmt : stmts) {
+                stmt.accept(this);
+            }
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            this.compiler.local(expr.slot);
+            expr.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            this.compiler.local(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            for (Expr argument : expr.arguments) {
+                argument.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr) {
+            expr.array.accept(this);
+            expr.index.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitSetIndexExpr(Expr.SetIndex expr) {
+            expr.array.accept(this);
+            expr.index.accept(this);
+            expr.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            stmt.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.PrintStmt stmt) {
+            stmt.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitBlock(Stmt.Block stmt) {
+            this.collect(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.IfStmt stmt) {
+            stmt.condition.accept(this);
+            stmt.thenBranch.accept(this);
+            if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.WhileStmt stmt) {
+            stmt.condition.accept(this);
+            stmt.body.accept(this);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.jlox;
+
+// Static helpers called from code generated by JvmCompiler. Each one has
+// fast paths for integers and doubles and otherwise defers to the
+// interpreter's operators, so errors read the same as on the tree walker.
+final class JvmRuntime {
+    private JvmRuntime() {
+    }
+
+    static Object add(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return Numbers.add(a, b);
+        if (l instanceof Double a && r instanceof Double b) return a + b;
+        return Lox.binary(TokenType.PLUS, l, r);
+    }
+
+    static Object subtract(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return Numbers.subtract(a, b);
+        if (l instanceof Double a && r instanceof Double b) return a - b;
+        return Lox.binary(TokenType.MINUS, l, r);
+    }
+
+    static Object multiply(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return Numbers.multiply(a, b);
+        if (l instanceof Double a && r instanceof Double b) return a * b;
+        return Lox.binary(TokenType.MULTIPLY, l, r);
+    }
+
+    static Object divide(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return Numbers.divide(a, b);
+        if (l instanceof Double a && r instanceof Double b) return a / b;
+        return Lox.binary(TokenType.DIVIDE, l, r);
+    }
+
+    static boolean less(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return a < b;
+        if (l instanceof Double a && r instanceof Double b) return a < b;
+        return (Boolean) Lox.binary(TokenType.LESS_THAN, l, r);
+    }
+
+    static boolean greater(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return a > b;
+        if (l instanceof Double a && r instanceof Double b) return a > b;
+        return (Boolean) Lox.binary(TokenType.GREATER_THAN, l, r);
+    }
+
+    static boolean lessEqual(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return a <= b;
+        if (l instanceof Double a && r instanceof Double b) return a <= b;
+        return (Boolean) Lox.binary(TokenType.LESS_THAN_OR_EQUAL, l, r);
+    }
+
+    static boolean greaterEqual(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return a >= b;
+        if (l instanceof Double a && r instanceof Double b) return a >= b;
+        return (Boolean) Lox.binary(TokenType.GREATER_THAN_OR_EQUAL, l, r);
+    }
+
+    static boolean equal(Object l, Object r) {
+        return Lox.equal(l, r);
+    }
+
+    static Object negate(Object r) {
+        if (r instanceof Long a) return Numbers.negate(a);
+        if (r instanceof Double a) return -a;
+        return Lox.unary(TokenType.MINUS, r);
+    }
+
+    static Object plus(Object r) {
+        return Lox.unary(TokenType.PLUS, r);
+    }
+
+    static boolean not(Object r) {
+        return (Boolean) Lox.unary(TokenType.NOT, r);
+    }
+
+    static boolean truth(Object o) {
+        return Lox.isTruth(o);
+    }
+}
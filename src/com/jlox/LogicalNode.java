@@ -0,0 +1,88 @@
+package com.jlox;
+
+abstract class LogicalNode {
+    // What each node is, for dispatch(). Uninitialized and Generic are OTHER.
+    static final int OTHER = 0;
+    static final int BOOLEAN_AND = 1;
+    static final int BOOLEAN_OR = 2;
+
+    static final LogicalNode UNINITIALIZED = new Uninitialized();
+    static final LogicalNode GENERIC = new Generic();
+
+    final int kind;
+
+    LogicalNode(int kind) {
+        this.kind = kind;
+    }
+
+    abstract Object execute(Expr.Logical expr, Object l, Object r);
+
+    // One call site per specialized class; see BinaryNode.dispatch.
+    static Object dispatch(LogicalNode node, Expr.Logical expr, Object l, Object r) {
+        return switch (node.kind) {
+            case BOOLEAN_AND -> ((BooleanAnd) node).execute(expr, l, r);
+            case BOOLEAN_OR -> ((BooleanOr) node).execute(expr, l, r);
+            default -> node.execute(expr, l, r);
+        };
+    }
+
+    static Object generalize(Expr.Logical expr, Object l, Object r) {
+        expr.node = GENERIC;
+        return Lox.logical(expr.op.type, l, r);
+    }
+
+    static LogicalNode specialize(TokenType op, Object l, Object r) {
+        if (l instanceof Boolean && r instanceof Boolean) {
+            return op == TokenType.OR ? new BooleanOr() : new BooleanAnd();
+        }
+        return GENERIC;
+    }
+
+    static final class Uninitialized extends LogicalNode {
+        Uninitialized() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Expr.Logical expr, Object l, Object r) {
+            LogicalNode node = specialize(expr.op.type, l, r);
+            expr.node = node;
+            return node.execute(expr, l, r);
+        }
+    }
+
+    static final class Generic extends LogicalNode {
+        Generic() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Expr.Logical expr, Object l, Object r) {
+            return Lox.logical(expr.op.type, l, r);
+        }
+    }
+
+    static final class BooleanAnd extends LogicalNode {
+        BooleanAnd() {
+            super(BOOLEAN_AND);
+        }
+
+        @Override
+        Object execute(Expr.Logical expr, Object l, Object r) {
+            if (l instanceof Boolean a && r instanceof Boolean b) return a && b;
+            return generalize(expr, l, r);
+        }
+    }
+
+    static final class BooleanOr extends LogicalNode {
+        BooleanOr() {
+            super(BOOLEAN_OR);
+        }
+
+        @Override
+        Object execute(Expr.Logical expr, Object l, Object r) {
+            if (l instanceof Boolean a && r instanceof Boolean b) return a || b;
+            return generalize(expr, l, r);
+        }
+    }
+}
@@ -1,55 +1,305 @@
 package com.jlox;
 
-import com.jlox.Stmt.ExpressionStmt;
-
 import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 class Lox implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    Map<Object, Object> symbolTable;
+    static final int HOT_LOOP = 1000;
+
+    enum Backend {
+        AST,
+        VM,
+        JVM,
+        ARENA,
+    }
+
+    Resolver resolver;
+    Optimizer optimizer;
+    Object[] slots;
+    Backend backend;
+    OutputSink out;
+    Profiler profiler;
+    Budget.Meter meter;
 
     Lox() {
-        this.symbolTable = new HashMap<>();
+        this(16);
+    }
+
+    Lox(int slotCount) {
+        this(new Object[slotCount], OutputSink.stdout());
+        this.resolver = new Resolver();
+        this.optimizer = new Optimizer();
+    }
+
+    // Runtime state only, for statements that are already optimized and
+    // resolved, like a Program's. prepare() cannot be used on it.
+    Lox(Object[] slots, OutputSink out) {
+        this.slots = slots;
+        this.backend = Backend.AST;
+        this.out = out;
     }
 
-    private void run(String source) {
+    void run(String source) {
         Scanner s = new Scanner(source);
-        List<Token> tokens = s.scanTokens();
+        TokenBuffer tokens = s.scanBuffer();
 
         Interpreter p = new Interpreter(tokens);
-        List<Stmt> stmts = p.Parse();
+        List<Stmt> stmts = this.prepare(p.Parse());
+        this.execute(stmts);
+
+//        this.printSymbolTable();
+    }
 
-        for (Stmt stmt : stmts) {
-            stmt.accept(this);
+    private void runStream(TokenStream tokens) {
+        try (tokens) {
+            Interpreter p = new Interpreter(tokens);
+            Stmt stmt;
+            while ((stmt = p.next()) != null) {
+                this.execute(this.prepare(List.of(stmt)));
+            }
         }
+    }
 
-//        this.printSymbolTable();
+    List<Stmt> prepare(List<Stmt> stmts) {
+        if (this.optimizer != null) {
+            stmts = this.optimizer.optimize(stmts);
+        }
+        this.resolve(stmts);
+        return stmts;
+    }
+
+    void execute(List<Stmt> stmts) {
+        this.metered(() -> this.dispatch(stmts));
+    }
+
+    void execute(Arena arena) {
+        this.metered(() -> this.evaluate(arena));
+    }
+
+    private void metered(Runnable body) {
+        if (this.meter == null) {
+            body.run();
+            return;
+        }
+        Budget.Meter outer = Budget.Meter.CURRENT.get();
+        Budget.Meter.CURRENT.set(this.meter);
+        try {
+            body.run();
+        } finally {
+            Budget.Meter.CURRENT.set(outer);
+        }
+    }
+
+    private void evaluate(Arena arena) {
+        ArenaEvaluator evaluator = new ArenaEvaluator(this.slots, this.out);
+        evaluator.meter = this.meter;
+        evaluator.run(arena);
+    }
+
+    private void dispatch(List<Stmt> stmts) {
+        switch (this.backend) {
+            case AST -> {
+                for (Stmt stmt : stmts) {
+                    this.execute(stmt);
+                }
+            }
+            case VM -> {
+                Compiler compiler = new Compiler();
+                compiler.ticks = this.meter != null;
+                VM vm = new VM(this.slots, this.out);
+                vm.meter = this.meter;
+                vm.run(compiler.compile(stmts));
+            }
+            case JVM -> {
+                MethodHandle compiled;
+                try {
+                    compiled = JvmCompiler.compile(stmts);
+                } catch (IllegalStateException e) {
+                    // Programs too large for one method stay on the tree walker.
+                    for (Stmt stmt : stmts) {
+                        this.execute(stmt);
+                    }
+                    return;
+                }
+                this.invoke(compiled);
+            }
+            case ARENA -> this.evaluate(Arena.of(stmts));
+        }
+    }
+
+    void invoke(MethodHandle compiled) {
+        try {
+            compiled.invokeExact(this, this.slots);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void tick() {
+        if (this.meter != null) this.meter.tick();
+    }
+
+    void print(Object o) {
+        this.out.println(o);
+    }
+
+    void resolve(List<Stmt> stmts) {
+        this.resolver.resolve(stmts);
+        if (this.resolver.slotCount() > this.slots.length) {
+            this.slots = Arrays.copyOf(this.slots, Math.max(this.resolver.slotCount(), this.slots.length * 2));
+        }
+    }
+
+    Map<Object, Object> symbolTable() {
+        Map<Object, Object> table = new LinkedHashMap<>();
+        for (int i = 0; i < this.resolver.slotCount(); i++) {
+            table.put(this.resolver.names.get(i), this.slots[i]);
+        }
+        return table;
     }
 
     void printSymbolTable() {
-        System.out.println(this.symbolTable.toString());
+        this.out.println(this.symbolTable().toString());
     }
 
-    private static void runFile(String path) throws IOException {
+    private void runFile(String path, boolean stream, boolean pipeline) throws IOException {
+        if (path.endsWith(".loxc")) {
+            this.execute(this.prepare(Loxc.read(Paths.get(path))));
+            return;
+        }
+        if (pipeline) {
+            this.runStream(new TokenPipeline(Scanner.open(Paths.get(path))));
+            return;
+        }
+        if (stream) {
+            this.runStream(TokenStream.of(Scanner.open(Paths.get(path))));
+            return;
+        }
+        byte[] f = Files.readAllBytes(Paths.get(path));
+        this.run(new String(f));
+    }
+
+    private void compileFile(String path, String target) throws IOException {
         byte[] f = Files.readAllBytes(Paths.get(path));
-        new Lox().run(new String(f));
+        List<Stmt> stmts = new Interpreter(new Scanner(new String(f)).scanBuffer()).Parse();
+        if (this.optimizer != null) {
+            stmts = this.optimizer.optimize(stmts);
+        }
+        Loxc.write(stmts, Paths.get(target));
+    }
+
+    // Parses each file without running it and prints every error found.
+    static boolean check(List<String> paths) throws IOException {
+        int errors = 0;
+        for (String path : paths) {
+            byte[] f = Files.readAllBytes(Paths.get(path));
+            Interpreter p = new Interpreter(new Scanner(new String(f, StandardCharsets.UTF_8)).scanBuffer());
+            List<Stmt> stmts = p.parseAll();
+            // Unknown functions and wrong argument counts.
+            Resolver resolver = new Resolver();
+            try {
+                resolver.resolve(stmts);
+            } catch (ParseError e) {
+                for (Diagnostics.Diagnostic d : resolver.diagnostics.all()) {
+                    p.diagnostics.report(d.line(), d.column(), d.token(), d.message());
+                }
+            }
+            p.diagnostics.print(System.err, path);
+            errors += p.diagnostics.all().size();
+        }
+        System.err.println(errors + " error(s) in " + paths.size() + " file(s)");
+        return errors == 0;
     }
 
     public static void main(String[] args) throws IOException {
         String path = "/Users/manosriram/dev/jlox/src/com/jlox/source.jlox";
-        Lox.runFile(path);
+        Lox lox = new Lox();
+        boolean stream = false;
+        boolean pipeline = false;
+        boolean stats = false;
+        String compileTo = null;
+        boolean repl = false;
+        String folded = null;
+        String outPath = null;
+        boolean check = false;
+        Budget budget = Budget.UNLIMITED;
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--vm")) lox.backend = Backend.VM;
+            else if (arg.equals("--jvm")) lox.backend = Backend.JVM;
+            else if (arg.equals("--ast")) lox.backend = Backend.AST;
+            else if (arg.equals("--arena")) lox.backend = Backend.ARENA;
+            else if (arg.equals("--stream")) stream = true;
+            else if (arg.equals("--pipeline")) pipeline = true;
+            else if (arg.equals("--no-optimize")) lox.optimizer = null;
+            else if (arg.equals("--stats")) stats = true;
+            else if (arg.equals("--repl")) repl = true;
+            else if (arg.equals("--profile")) lox.profiler = new Profiler();
+            else if (arg.startsWith("--folded=")) {
+                lox.profiler = new Profiler();
+                folded = arg.substring("--folded=".length());
+            }
+            else if (arg.startsWith("--compile=")) compileTo = arg.substring("--compile=".length());
+            else if (arg.startsWith("--out=")) outPath = arg.substring("--out=".length());
+            else if (arg.equals("--check")) check = true;
+            else if (arg.startsWith("--max-steps=")) budget = budget.withMaxSteps(Long.parseLong(arg.substring("--max-steps=".length())));
+            else if (arg.startsWith("--max-string=")) budget = budget.withMaxStringLength(Integer.parseInt(arg.substring("--max-string=".length())));
+            else if (arg.startsWith("--max-allocation=")) budget = budget.withMaxAllocation(Long.parseLong(arg.substring("--max-allocation=".length())));
+            else if (arg.startsWith("--timeout=")) budget = budget.withTimeout(Duration.ofMillis(Long.parseLong(arg.substring("--timeout=".length()))));
+            else {
+                path = arg;
+                paths.add(arg);
+            }
+        }
+        if (check) {
+            System.exit(check(paths.isEmpty() ? List.of(path) : paths) ? 0 : 65);
+        }
+        if (outPath != null) lox.out = OutputSink.file(Paths.get(outPath));
+        if (budget != Budget.UNLIMITED) lox.meter = budget.start();
+        try {
+            if (repl) new Repl(lox).run();
+            else if (compileTo != null) lox.compileFile(path, compileTo);
+            else lox.runFile(path, stream, pipeline);
+        } finally {
+            lox.out.close();
+        }
+        if (lox.profiler != null) {
+            lox.profiler.report(System.err);
+            if (folded != null) {
+                try (PrintStream f = new PrintStream(folded, StandardCharsets.UTF_8)) {
+                    lox.profiler.writeFolded(f);
+                }
+            }
+        }
+        if (stats && lox.optimizer != null) {
+            System.err.println("optimizer: eliminated " + lox.optimizer.eliminated + " nodes");
+        }
     }
 
     Object eval(Expr expr) {
+        if (this.profiler != null) return this.profiler.eval(this, expr);
         return expr.accept(this);
     }
 
     void execute(Stmt stmt) {
+        if (this.meter != null) this.meter.tick();
+        if (this.profiler != null) {
+            this.profiler.execute(this, stmt);
+            return;
+        }
         stmt.accept(this);
     }
 
@@ -57,69 +307,107 @@ class Lox implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object l = eval(expr.left);
         Object r = eval(expr.right);
+        return BinaryNode.dispatch(expr.node, expr, l, r);
+    }
+
+    static boolean isString(Object o) {
+        return o instanceof String || o instanceof Rope;
+    }
+
+    // Objects.equals, except that a Rope equals the String it spells and a
+    // Long equals the Double with the same value.
+    static boolean equal(Object l, Object r) {
+        if (l instanceof Rope || r instanceof Rope) {
+            if (!isString(l) || !isString(r)) return false;
+            if (((CharSequence) l).length() != ((CharSequence) r).length()) return false;
+            return l.toString().equals(r.toString());
+        }
+        if (l instanceof Number && r instanceof Number && l.getClass() != r.getClass()) {
+            return Numbers.equal(l, r);
+        }
+        return Objects.equals(l, r);
+    }
+
+    static Object binary(TokenType op, Object l, Object r) {
         String message = "";
         if (l != null && r != null) message = "Cannot evaluate types " + l.getClass() + " and " + r.getClass();
-        switch (expr.operator.type) {
+        switch (op) {
             case TokenType.PLUS -> {
-                if (l instanceof String && r instanceof String) {
-                    return (String) l + (String) r;
-                } else if (l instanceof Double && r instanceof Double) {
-                    return (double) l + (double) r;
+                if (isString(l) && isString(r)) {
+                    return Rope.concat(l, r);
+                } else if (l instanceof Long a && r instanceof Long b) {
+                    return Numbers.add(a, b);
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) + Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
             }
             case TokenType.MINUS -> {
-                if (l instanceof Double && r instanceof Double) {
-                    return (double) l - (double) r;
+                if (l instanceof Long a && r instanceof Long b) {
+                    return Numbers.subtract(a, b);
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) - Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
             }
             case TokenType.MULTIPLY -> {
-                if (l instanceof Double && r instanceof Double) {
-                    return (double) l * (double) r;
+                if (l instanceof Long a && r instanceof Long b) {
+                    return Numbers.multiply(a, b);
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) * Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
             }
             case TokenType.DIVIDE -> {
-                if (l instanceof Double && r instanceof Double) {
-                    return (double) l / (double) r;
+                if (l instanceof Long a && r instanceof Long b) {
+                    return Numbers.divide(a, b);
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) / Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
             }
             case TokenType.EQUALS -> {
-                return Objects.equals(l, r);
+                return equal(l, r);
             }
             case TokenType.NOT_EQUALS -> {
-                return !Objects.equals(l, r);
+                return !equal(l, r);
             }
             case TokenType.LESS_THAN -> {
-                if (l instanceof Double && r instanceof Double) {
-                    return (double) l < (double) r;
+                if (l instanceof Long a && r instanceof Long b) {
+                    return a < b;
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) < Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
             }
             case TokenType.GREATER_THAN -> {
-                if (l instanceof Double && r instanceof Double) {
-                    return (double) l > (double) r;
+                if (l instanceof Long a && r instanceof Long b) {
+                    return a > b;
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) > Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
             }
             case TokenType.LESS_THAN_OR_EQUAL -> {
-                if (l instanceof Double && r instanceof Double) {
-                    return (double) l <= (double) r;
+                if (l instanceof Long a && r instanceof Long b) {
+                    return a <= b;
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) <= Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
             }
             case TokenType.GREATER_THAN_OR_EQUAL -> {
-                if (l instanceof Double && r instanceof Double) {
-                    return (double) l >= (double) r;
+                if (l instanceof Long a && r instanceof Long b) {
+                    return a >= b;
+                } else if (Numbers.isNumber(l) && Numbers.isNumber(r)) {
+                    return Numbers.toDouble(l) >= Numbers.toDouble(r);
                 } else {
                     throw new RuntimeException(message);
                 }
@@ -134,7 +422,7 @@ class Lox implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object r = eval(expr.value);
-        this.symbolTable.put(expr.name.literal, r);
+        this.slots[expr.slot] = r;
         return r;
     }
 
@@ -143,12 +431,63 @@ class Lox implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return eval(expr.expression);
     }
 
+    // Arguments are evaluated left to right into locals, so calls of up to
+    // NativeFunction.MAX_DIRECT arguments allocate nothing.
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        NativeFunction f = expr.function;
+        List<Expr> args = expr.arguments;
+        switch (args.size()) {
+            case 0 -> {
+                return f.call();
+            }
+            case 1 -> {
+                return f.call(eval(args.get(0)));
+            }
+            case 2 -> {
+                Object a = eval(args.get(0));
+                return f.call(a, eval(args.get(1)));
+            }
+            case 3 -> {
+                Object a = eval(args.get(0));
+                Object b = eval(args.get(1));
+                return f.call(a, b, eval(args.get(2)));
+            }
+            case 4 -> {
+                Object a = eval(args.get(0));
+                Object b = eval(args.get(1));
+                Object c = eval(args.get(2));
+                return f.call(a, b, c, eval(args.get(3)));
+            }
+            default -> {
+                Object[] values = new Object[args.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = eval(args.get(i));
+                }
+                return f.callAll(values);
+            }
+        }
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object array = eval(expr.array);
+        return NumberArray.get(array, eval(expr.index));
+    }
+
+    @Override
+    public Object visitSetIndexExpr(Expr.SetIndex expr) {
+        Object array = eval(expr.array);
+        Object index = eval(expr.index);
+        return NumberArray.set(array, index, eval(expr.value));
+    }
+
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         return expr.value;
     }
 
-    boolean isTruth(Object obj) {
+    static boolean isTruth(Object obj) {
         if (obj == null) return false;
         if (obj instanceof Boolean) return (boolean) obj;
         return true;
@@ -158,8 +497,11 @@ class Lox implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitLogicalExpr(Expr.Logical expr) {
         Object l = eval(expr.left);
         Object r = eval(expr.right);
+        return LogicalNode.dispatch(expr.node, expr, l, r);
+    }
 
-        switch (expr.op.type) {
+    static Object logical(TokenType op, Object l, Object r) {
+        switch (op) {
             case TokenType.OR -> {
                 return isTruth(l) || isTruth(r);
             }
@@ -174,41 +516,40 @@ class Lox implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return this.symbolTable.get(expr.var.literal);
+        return this.slots[expr.slot];
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object r = eval(expr.right);
-        if (this.symbolTable.get(r) != null) {
-            r = this.symbolTable.get(r);
-        }
-        switch (expr.operator.type) {
+        return UnaryNode.dispatch(expr.node, expr, r);
+    }
+
+    static Object unary(TokenType op, Object r) {
+        switch (op) {
             case TokenType.TRUE, TokenType.FALSE -> {
                 return r;
             }
             case TokenType.NOT -> {
-                if (r.getClass() != Boolean.class) {
-                    throw new RuntimeException("Cannot evaluate type " + r.getClass());
+                if (r == null || r.getClass() != Boolean.class) {
+                    throw new RuntimeException("Cannot evaluate type " + (r == null ? null : r.getClass()));
                 }
                 return !(boolean) r;
             }
             case TokenType.PLUS -> {
-                if (r instanceof Integer) {
-                    return r;
-                } else if (r instanceof Float) {
+                if (Numbers.isNumber(r)) {
                     return r;
                 } else {
-                    throw new RuntimeException("Cannot evaluate type " + r.getClass());
+                    throw new RuntimeException("Cannot evaluate type " + (r == null ? null : r.getClass()));
                 }
             }
             case TokenType.MINUS -> {
-                if (r instanceof Integer) {
-                    return -(int) r;
-                } else if (r instanceof Float) {
-                    return -(float) r;
+                if (r instanceof Long a) {
+                    return Numbers.negate(a);
+                } else if (r instanceof Double) {
+                    return -(double) r;
                 } else {
-                    throw new RuntimeException("Cannot evaluate type " + r.getClass());
+                    throw new RuntimeException("Cannot evaluate type " + (r == null ? null : r.getClass()));
                 }
             }
         }
@@ -224,16 +565,51 @@ class Lox implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.PrintStmt stmt) {
         Object o = eval(stmt.expression);
-        System.out.println(o);
+        this.print(o);
         return null;
     }
 
+    // Loops start on the tree walker. Once entries plus back edges reach
+    // HOT_LOOP the loop is compiled by JvmCompiler and the rest of the
+    // current run, and every later entry, goes to the compiled code. All
+    // loop state lives in the slots, so the switch can happen between any
+    // two iterations. Loops that cannot be compiled stay interpreted.
+    @Override
+    public Void visitWhileStmt(Stmt.WhileStmt stmt) {
+        if (!stmt.tiered && ++stmt.entries + stmt.backEdges >= HOT_LOOP) this.tierUp(stmt);
+        while (true) {
+            // Keep profiled runs on the tree walker so every line is counted,
+            // even when another run has compiled the loop.
+            MethodHandle compiled = stmt.compiled;
+            if (compiled != null && this.profiler == null) {
+                this.invoke(compiled);
+                return null;
+            }
+            if (!isTruth(eval(stmt.condition))) return null;
+            this.execute(stmt.body);
+            if (!stmt.tiered && stmt.entries + ++stmt.backEdges >= HOT_LOOP) this.tierUp(stmt);
+        }
+    }
+
+    void tierUp(Stmt.WhileStmt stmt) {
+        if (this.profiler != null) return;
+        synchronized (stmt) {
+            if (stmt.tiered) return;
+            try {
+                stmt.compiled = JvmCompiler.compile(List.of(stmt));
+            } catch (IllegalStateException e) {
+                // Too large for one method.
+            }
+            stmt.tiered = true;
+        }
+    }
+
     @Override
     public Void visitIfStmt(Stmt.IfStmt stmt) {
         Object condition = eval(stmt.condition);
         if (isTruth(condition)) {
             execute(stmt.thenBranch);
-        } else {
+        } else if (stmt.elseBranch != null) {
             execute(stmt.elseBranch);
         }
 
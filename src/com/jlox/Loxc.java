@@ -0,0 +1,618 @@
+package com.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary form of a parsed program (.loxc).
+//
+//   magic "LOXC", u16 version
+//   string table:   u32 count, then u32 length + UTF-8 bytes per string
+//   constant pool:  u32 count, then a tag byte (+ payload) per constant
+//   line table:     u32 count, then one zigzag varint line delta per token
+//   node stream:    u32 statement count, then the statements in preorder
+//
+// Every node starts with a tag byte; tokens in the tree are written as their
+// code in TOKENS and take their line from the line table in stream order.
+// String, constant and child-count references in the node stream are varints.
+//
+// Any change to the format bumps VERSION:
+//   2  while loops (STMT_WHILE)
+//   3  integer constants (CONST_LONG)
+//   4  native calls (EXPR_CALL)
+//   5  array indexing (EXPR_INDEX, EXPR_SET_INDEX)
+//   6  token codes from TOKENS instead of TokenType ordinals
+final class Loxc {
+    static final int MAGIC = 0x4c4f5843;
+    static final int VERSION = 6;
+
+    static final byte CONST_NIL = 0;
+    static final byte CONST_TRUE = 1;
+    static final byte CONST_FALSE = 2;
+    static final byte CONST_DOUBLE = 3;
+    static final byte CONST_STRING = 4;
+    static final byte CONST_LONG = 5;
+
+    static final byte EXPR_BINARY = 1;
+    static final byte EXPR_ASSIGN = 2;
+    static final byte EXPR_LITERAL = 3;
+    static final byte EXPR_VARIABLE = 4;
+    static final byte EXPR_UNARY = 5;
+    static final byte EXPR_LOGICAL = 6;
+    static final byte EXPR_GROUPING = 7;
+    static final byte EXPR_CALL = 8;
+    static final byte EXPR_INDEX = 9;
+    static final byte EXPR_SET_INDEX = 10;
+
+    static final byte STMT_EXPRESSION = 32;
+    static final byte STMT_PRINT = 33;
+    static final byte STMT_BLOCK = 34;
+    static final byte STMT_IF = 35;
+    static final byte STMT_NONE = 36;
+    static final byte STMT_WHILE = 37;
+
+    // Token type by its code in the file. Codes are fixed: new types are
+    // appended here, whatever their place in TokenType.
+    static final TokenType[] TOKENS = {
+        TokenType.LEFT_BRACE, TokenType.RIGHT_BRACE, TokenType.LEFT_PAREN, TokenType.RIGHT_PAREN,
+        TokenType.COMMA, TokenType.DOT, TokenType.SEMICOLON,
+        TokenType.ASSIGN, TokenType.LESS_THAN, TokenType.GREATER_THAN,
+        TokenType.LESS_THAN_OR_EQUAL, TokenType.GREATER_THAN_OR_EQUAL,
+        TokenType.IF, TokenType.ELSE, TokenType.PASS, TokenType.RETURN, TokenType.PRINT,
+        TokenType.NOT, TokenType.EQUALS, TokenType.NOT_EQUALS,
+        TokenType.EOF, TokenType.IDENTIFIER,
+        TokenType.MINUS, TokenType.MULTIPLY, TokenType.DIVIDE, TokenType.PLUS,
+        TokenType.STRING, TokenType.NUMBER, TokenType.FLOAT,
+        TokenType.OR, TokenType.AND, TokenType.TRUE, TokenType.FALSE,
+        TokenType.BITWISE_OR, TokenType.BITWISE_AND,
+        TokenType.NIL,
+        TokenType.WHILE, TokenType.FOR, TokenType.LEFT_BRACKET, TokenType.RIGHT_BRACKET,
+    };
+    static final Map<TokenType, Integer> CODES = codes();
+
+    private Loxc() {
+    }
+
+    static Map<TokenType, Integer> codes() {
+        Map<TokenType, Integer> codes = new EnumMap<>(TokenType.class);
+        for (int i = 0; i < TOKENS.length; i++) {
+            codes.put(TOKENS[i], i);
+        }
+        if (codes.size() != TokenType.values().length) {
+            throw new IllegalStateException("Token types without a .loxc code");
+        }
+        return codes;
+    }
+
+    static void write(List<Stmt> stmts, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            new Writer().write(stmts, out);
+        }
+    }
+
+    static List<Stmt> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(buffer).read();
+        }
+    }
+
+    static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        List<String> strings;
+        Map<String, Integer> stringIndex;
+        List<Object> constants;
+        Map<Object, Integer> constantIndex;
+        ByteArrayOutputStream lineBytes;
+        int lineCount;
+        int lastLine;
+        ByteArrayOutputStream nodeBytes;
+        DataOutputStream nodes;
+
+        Writer() {
+            this.strings = new ArrayList<>();
+            this.stringIndex = new HashMap<>();
+            this.constants = new ArrayList<>();
+            this.constantIndex = new HashMap<>();
+            this.lineBytes = new ByteArrayOutputStream();
+            this.lineCount = 0;
+            this.lastLine = 0;
+            this.nodeBytes = new ByteArrayOutputStream();
+            this.nodes = new DataOutputStream(this.nodeBytes);
+        }
+
+        void write(List<Stmt> stmts, OutputStream target) throws IOException {
+            this.nodes.writeInt(stmts.size());
+            for (Stmt stmt : stmts) {
+                this.stmt(stmt);
+            }
+
+            DataOutputStream out = new DataOutputStream(target);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+
+            out.writeInt(this.strings.size());
+            for (String s : this.strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(this.constants.size());
+            for (Object c : this.constants) {
+                this.constant(out, c);
+            }
+
+            out.writeInt(this.lineCount);
+            this.lineBytes.writeTo(out);
+
+            this.nodes.flush();
+            this.nodeBytes.writeTo(out);
+            out.flush();
+        }
+
+        void constant(DataOutputStream out, Object c) throws IOException {
+            if (c == null) {
+                out.writeByte(CONST_NIL);
+            } else if (c instanceof Boolean b) {
+                out.writeByte(b ? CONST_TRUE : CONST_FALSE);
+            } else if (c instanceof Double d) {
+                out.writeByte(CONST_DOUBLE);
+                out.writeDouble(d);
+            } else if (c instanceof Long n) {
+                out.writeByte(CONST_LONG);
+                out.writeLong(n);
+            } else if (c instanceof String s) {
+                out.writeByte(CONST_STRING);
+                out.writeInt(this.stringIndex.get(s));
+            } else {
+                throw new RuntimeException("Cannot serialize constant of type " + c.getClass());
+            }
+        }
+
+        int string(String s) {
+            Integer index = this.stringIndex.get(s);
+            if (index == null) {
+                index = this.strings.size();
+                this.strings.add(s);
+                this.stringIndex.put(s, index);
+            }
+            return index;
+        }
+
+        int constant(Object c) {
+            Integer index = this.constantIndex.get(c);
+            if (index == null) {
+                if (c instanceof String str) this.string(str);
+                index = this.constants.size();
+                this.constants.add(c);
+                this.constantIndex.put(c, index);
+            }
+            return index;
+        }
+
+        static void varint(OutputStream out, int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        void token(Token t) throws IOException {
+            this.nodes.writeByte(CODES.get(t.type));
+            int delta = t.line - this.lastLine;
+            varint(this.lineBytes, (delta << 1) ^ (delta >> 31));
+            this.lineCount++;
+            this.lastLine = t.line;
+        }
+
+        void name(Token t) throws IOException {
+            this.token(t);
+            varint(this.nodes, this.string((String) t.literal));
+        }
+
+        void expr(Expr expr) {
+            expr.accept(this);
+        }
+
+        void stmt(Stmt stmt) {
+            if (stmt == null) {
+                this.tag(STMT_NONE);
+                return;
+            }
+            stmt.accept(this);
+        }
+
+        void tag(byte tag) {
+            try {
+                this.nodes.writeByte(tag);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            try {
+                this.tag(EXPR_BINARY);
+                this.token(expr.operator);
+                this.expr(expr.left);
+                this.expr(expr.right);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            try {
+                this.tag(EXPR_ASSIGN);
+                this.name(expr.name);
+                this.expr(expr.value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            try {
+                this.tag(EXPR_LITERAL);
+                varint(this.nodes, this.constant(expr.value));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            try {
+                this.tag(EXPR_VARIABLE);
+                this.name(expr.var);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            try {
+                this.tag(EXPR_UNARY);
+                this.token(expr.operator);
+                this.expr(expr.right);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            try {
+                this.tag(EXPR_LOGICAL);
+                this.token(expr.op);
+                this.expr(expr.left);
+                this.expr(expr.right);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            this.tag(EXPR_GROUPING);
+            this.expr(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            try {
+                this.tag(EXPR_CALL);
+                this.name(expr.name);
+                varint(this.nodes, expr.arguments.size());
+                for (Expr argument : expr.arguments) {
+                    this.expr(argument);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr) {
+            try {
+                this.tag(EXPR_INDEX);
+                this.token(expr.bracket);
+                this.expr(expr.array);
+                this.expr(expr.index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitSetIndexExpr(Expr.SetIndex expr) {
+            try {
+                this.tag(EXPR_SET_INDEX);
+                this.token(expr.bracket);
+                this.expr(expr.array);
+                this.expr(expr.index);
+                this.expr(expr.value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            this.tag(STMT_EXPRESSION);
+            this.expr(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.PrintStmt stmt) {
+            this.tag(STMT_PRINT);
+            this.expr(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitBlock(Stmt.Block stmt) {
+            try {
+                this.tag(STMT_BLOCK);
+                varint(this.nodes, stmt.statements.size());
+                for (Stmt s : stmt.statements) {
+                    this.stmt(s);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.IfStmt stmt) {
+            this.tag(STMT_IF);
+            this.expr(stmt.condition);
+            this.stmt(stmt.thenBranch);
+            this.stmt(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.WhileStmt stmt) {
+            this.tag(STMT_WHILE);
+            this.expr(stmt.condition);
+            this.stmt(stmt.body);
+            return null;
+        }
+    }
+
+    static class Reader {
+        ByteBuffer buffer;
+        String[] strings;
+        Object[] constants;
+        int[] lines;
+        int nextLine;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        List<Stmt> read() {
+            try {
+                return this.readChecked();
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new RuntimeException("Corrupt .loxc file: truncated or out-of-range data", e);
+            }
+        }
+
+        List<Stmt> readChecked() {
+            if (this.buffer.remaining() < 6 || this.buffer.getInt() != MAGIC) {
+                throw new RuntimeException("Not a .loxc file");
+            }
+            int version = this.buffer.getShort() & 0xffff;
+            if (version != VERSION) {
+                throw new RuntimeException("Unsupported .loxc version " + version + ", expected " + VERSION);
+            }
+
+            this.strings = new String[this.count(this.buffer.getInt())];
+            for (int i = 0; i < this.strings.length; i++) {
+                byte[] bytes = new byte[this.count(this.buffer.getInt())];
+                this.buffer.get(bytes);
+                this.strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            this.constants = new Object[this.count(this.buffer.getInt())];
+            for (int i = 0; i < this.constants.length; i++) {
+                this.constants[i] = this.constant();
+            }
+
+            this.lines = new int[this.count(this.buffer.getInt())];
+            int line = 0;
+            for (int i = 0; i < this.lines.length; i++) {
+                int zigzag = this.varint();
+                line += (zigzag >>> 1) ^ -(zigzag & 1);
+                this.lines[i] = line;
+            }
+            this.nextLine = 0;
+
+            int count = this.count(this.buffer.getInt());
+            List<Stmt> stmts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                stmts.add(this.stmt());
+            }
+            return stmts;
+        }
+
+        // Every counted item takes at least a byte, so a count larger than
+        // what is left cannot be right; checking first avoids allocating
+        // for a corrupt length.
+        int count(int count) {
+            if (count < 0 || count > this.buffer.remaining()) {
+                throw new RuntimeException("Corrupt .loxc file: count " + (count & 0xffffffffL) + " exceeds the remaining " + this.buffer.remaining() + " bytes");
+            }
+            return count;
+        }
+
+        int varint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.buffer.get();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        Object constant() {
+            byte tag = this.buffer.get();
+            switch (tag) {
+                case CONST_NIL -> {
+                    return null;
+                }
+                case CONST_TRUE -> {
+                    return true;
+                }
+                case CONST_FALSE -> {
+                    return false;
+                }
+                case CONST_DOUBLE -> {
+                    return this.buffer.getDouble();
+                }
+                case CONST_STRING -> {
+                    return this.strings[this.buffer.getInt()];
+                }
+                case CONST_LONG -> {
+                    return Numbers.box(this.buffer.getLong());
+                }
+                default -> throw new RuntimeException("Corrupt .loxc file: unknown constant tag " + tag);
+            }
+        }
+
+        Token token() {
+            TokenType type = TOKENS[this.buffer.get() & 0xff];
+            return new Token(type, "", "", this.lines[this.nextLine++]);
+        }
+
+        Token name() {
+            Token t = this.token();
+            // Only names are interned; string constants are not.
+            String name = Symbols.intern(this.strings[this.varint()]);
+            return new Token(TokenType.IDENTIFIER, name, name, t.line);
+        }
+
+        Expr expr() {
+            byte tag = this.buffer.get();
+            switch (tag) {
+                case EXPR_BINARY -> {
+                    Token op = this.token();
+                    Expr left = this.expr();
+                    return new Expr.Binary(left, op, this.expr());
+                }
+                case EXPR_ASSIGN -> {
+                    Token name = this.name();
+                    return new Expr.Assign(name, this.expr());
+                }
+                case EXPR_LITERAL -> {
+                    return new Expr.Literal(this.constants[this.varint()]);
+                }
+                case EXPR_VARIABLE -> {
+                    return new Expr.Variable(this.name());
+                }
+                case EXPR_UNARY -> {
+                    Token op = this.token();
+                    return new Expr.Unary(op, this.expr());
+                }
+                case EXPR_LOGICAL -> {
+                    Token op = this.token();
+                    Expr left = this.expr();
+                    return new Expr.Logical(left, op, this.expr());
+                }
+                case EXPR_GROUPING -> {
+                    return new Expr.Grouping(this.expr());
+                }
+                case EXPR_CALL -> {
+                    Token name = this.name();
+                    int count = this.count(this.varint());
+                    List<Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(this.expr());
+                    }
+                    return new Expr.Call(name, arguments);
+                }
+                case EXPR_INDEX -> {
+                    Token bracket = this.token();
+                    Expr array = this.expr();
+                    return new Expr.Index(array, bracket, this.expr());
+                }
+                case EXPR_SET_INDEX -> {
+                    Token bracket = this.token();
+                    Expr array = this.expr();
+                    Expr index = this.expr();
+                    return new Expr.SetIndex(array, bracket, index, this.expr());
+                }
+                default -> throw new RuntimeException("Corrupt .loxc file: unknown expression tag " + tag);
+            }
+        }
+
+        Stmt stmt() {
+            byte tag = this.buffer.get();
+            switch (tag) {
+                case STMT_EXPRESSION -> {
+                    return new Stmt.ExpressionStmt(this.expr());
+                }
+                case STMT_PRINT -> {
+                    return new Stmt.PrintStmt(this.expr());
+                }
+                case STMT_BLOCK -> {
+                    int count = this.count(this.varint());
+                    List<Stmt> stmts = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        stmts.add(this.stmt());
+                    }
+                    return new Stmt.Block(stmts);
+                }
+                case STMT_IF -> {
+                    Expr condition = this.expr();
+                    Stmt thenBranch = this.stmt();
+                    return new Stmt.IfStmt(condition, thenBranch, this.stmt());
+                }
+                case STMT_WHILE -> {
+                    Expr condition = this.expr();
+                    return new Stmt.WhileStmt(condition, this.stmt());
+                }
+                case STMT_NONE -> {
+                    return null;
+                }
+                default -> throw new RuntimeException("Corrupt .loxc file: unknown statement tag " + tag);
+            }
+        }
+    }
+}
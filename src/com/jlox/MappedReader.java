@@ -0,0 +1,71 @@
+package com.jlox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Decodes a file through a sliding memory-mapped window, so only one
+// window of the file is mapped and nothing is copied into the heap besides
+// the caller's char buffer.
+class MappedReader extends Reader {
+    static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    FileChannel channel;
+    long size;
+    long position;
+    MappedByteBuffer window;
+    CharsetDecoder decoder;
+    boolean eof;
+
+    MappedReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = this.channel.size();
+        this.position = 0;
+        this.decoder = StandardCharsets.UTF_8.newDecoder();
+        this.map();
+    }
+
+    void map() throws IOException {
+        long length = Math.min(WINDOW_SIZE, this.size - this.position);
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, length);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (this.eof) return -1;
+        if (len == 0) return 0;
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off) {
+            boolean last = this.position + this.window.limit() >= this.size;
+            CoderResult result = this.decoder.decode(this.window, out, last);
+            if (result.isError()) result.throwException();
+
+            if (last && !this.window.hasRemaining()) {
+                this.decoder.flush(out);
+                this.eof = true;
+                break;
+            }
+            if (result.isUnderflow() && out.position() == off) {
+                // The window ends inside a multi-byte sequence; remap from it.
+                this.position += this.window.position();
+                this.map();
+            }
+        }
+
+        int read = out.position() - off;
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,236 @@
+package com.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+// A host function adapted, once, to take and return Lox values. handle has
+// type (Object, ...)Object with exactly arity parameters, so the call()
+// overloads are a plain invokeExact: no reflection and no argument array.
+// Calls with more than MAX_DIRECT arguments go through a spreader instead.
+final class NativeFunction {
+    static final int MAX_DIRECT = 4;
+
+    static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    // How a Lox value is turned into each supported parameter type.
+    static final Map<Class<?>, MethodHandle> ARGUMENTS = Map.ofEntries(
+            Map.entry(double.class, converter("toDouble", double.class)),
+            Map.entry(float.class, converter("toFloat", float.class)),
+            Map.entry(long.class, converter("toLong", long.class)),
+            Map.entry(int.class, converter("toInt", int.class)),
+            Map.entry(short.class, converter("toShort", short.class)),
+            Map.entry(byte.class, converter("toByte", byte.class)),
+            Map.entry(char.class, converter("toChar", char.class)),
+            Map.entry(boolean.class, converter("toBoolean", boolean.class)),
+            Map.entry(String.class, converter("toText", String.class)),
+            Map.entry(CharSequence.class, converter("toText", String.class).asType(MethodType.methodType(CharSequence.class, Object.class))),
+            Map.entry(Object.class, converter("toValue", Object.class)),
+            Map.entry(double[].class, converter("toArray", double[].class)));
+    static final MethodHandle CAST = converter("cast", Object.class, Class.class, Object.class);
+
+    final String name;
+    final int arity;
+    final MethodHandle handle;
+    final MethodHandle spread;
+
+    NativeFunction(String name, MethodHandle handle) {
+        this.name = name;
+        this.arity = handle.type().parameterCount();
+        this.handle = handle;
+        this.spread = handle.asSpreader(Object[].class, this.arity);
+    }
+
+    // Parameters of the types in ARGUMENTS accept any Lox value that
+    // converts; values for other reference types must be instances of them.
+    // Either way a mismatch is a script error, not a ClassCastException.
+    // Integral results become Longs, other numbers Doubles, chars
+    // one-character strings, double[] results arrays, and void results nil.
+    // String results are charged to the run's Budget like any string the
+    // script builds.
+    static NativeFunction of(String name, MethodHandle target) {
+        MethodHandle h = target.asFixedArity();
+        MethodType type = h.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            Class<?> parameter = type.parameterType(i);
+            MethodHandle filter = ARGUMENTS.get(parameter);
+            if (filter == null) {
+                filter = MethodHandles.insertArguments(CAST, 0, parameter).asType(MethodType.methodType(parameter, Object.class));
+            }
+            h = MethodHandles.filterArguments(h, i, filter);
+        }
+        Class<?> result = type.returnType();
+        if (result == long.class || result == int.class || result == short.class || result == byte.class) {
+            h = MethodHandles.filterReturnValue(h, converter("box", Long.class, long.class).asType(MethodType.methodType(Long.class, result)));
+        } else if (result == float.class) {
+            h = h.asType(h.type().changeReturnType(double.class));
+        } else if (result == char.class) {
+            h = MethodHandles.filterReturnValue(h, converter("fromChar", String.class, char.class));
+        } else if (result == String.class) {
+            h = MethodHandles.filterReturnValue(h, converter("fromText", String.class, String.class));
+        } else if (!result.isPrimitive() && result != String.class && result != Boolean.class && result != Double.class && result != Long.class) {
+            h = MethodHandles.filterReturnValue(h, converter("fromHost", Object.class, Object.class).asType(MethodType.methodType(Object.class, result)));
+        }
+        return new NativeFunction(name, h.asType(MethodType.genericMethodType(type.parameterCount())));
+    }
+
+    static MethodHandle converter(String name, Class<?> result) {
+        return converter(name, result, Object.class);
+    }
+
+    static MethodHandle converter(String name, Class<?> result, Class<?>... parameters) {
+        try {
+            return LOOKUP.findStatic(NativeFunction.class, name, MethodType.methodType(result, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static double toDouble(Object value) {
+        if (value instanceof Double d) return d;
+        if (value instanceof Long n) return n;
+        throw new RuntimeException("Expected a number but got " + typeOf(value));
+    }
+
+    static long toLong(Object value) {
+        if (value instanceof Long n) return n;
+        if (value instanceof Double d && d == Math.rint(d) && Math.abs(d) < 0x1p63) return d.longValue();
+        throw new RuntimeException("Expected an integer but got " + typeOf(value));
+    }
+
+    static float toFloat(Object value) {
+        return (float) toDouble(value);
+    }
+
+    static int toInt(Object value) {
+        long n = toLong(value);
+        if (n != (int) n) throw new RuntimeException("Integer " + n + " out of range");
+        return (int) n;
+    }
+
+    static short toShort(Object value) {
+        long n = toLong(value);
+        if (n != (short) n) throw new RuntimeException("Integer " + n + " out of range");
+        return (short) n;
+    }
+
+    static byte toByte(Object value) {
+        long n = toLong(value);
+        if (n != (byte) n) throw new RuntimeException("Integer " + n + " out of range");
+        return (byte) n;
+    }
+
+    static char toChar(Object value) {
+        String s = toText(value);
+        if (s.length() != 1) throw new RuntimeException("Expected one character but got " + s.length());
+        return s.charAt(0);
+    }
+
+    static boolean toBoolean(Object value) {
+        return Lox.isTruth(value);
+    }
+
+    static String toText(Object value) {
+        if (Lox.isString(value)) return value.toString();
+        throw new RuntimeException("Expected a string but got " + typeOf(value));
+    }
+
+    // The array itself, not a copy, so hosts can update it in place.
+    static double[] toArray(Object value) {
+        return NumberArray.values(value);
+    }
+
+    // Hosts see Strings, never Ropes.
+    static Object toValue(Object value) {
+        return Rope.flatten(value);
+    }
+
+    static Object cast(Class<?> type, Object value) {
+        Object v = Rope.flatten(value);
+        if (v == null || type.isInstance(v)) return v;
+        throw new RuntimeException("Expected " + type.getSimpleName() + " but got " + typeOf(value));
+    }
+
+    static Long box(long value) {
+        return Numbers.box(value);
+    }
+
+    static String fromText(String value) {
+        if (value != null) Budget.Meter.chargeString(value.length());
+        return value;
+    }
+
+    static String fromChar(char value) {
+        Budget.Meter.chargeString(1);
+        return String.valueOf(value);
+    }
+
+    static Object fromHost(Object value) {
+        if (value instanceof CharSequence cs) Budget.Meter.chargeString(cs.length());
+        if (value instanceof Character) Budget.Meter.chargeString(1);
+        return Execution.toLox(value);
+    }
+
+    static String typeOf(Object value) {
+        return value == null ? "nil" : value.getClass().getSimpleName();
+    }
+
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException r) return r;
+        if (e instanceof Error error) throw error;
+        return new RuntimeException(e);
+    }
+
+    Object call() {
+        try {
+            return (Object) this.handle.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    Object call(Object a) {
+        try {
+            return (Object) this.handle.invokeExact(a);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    Object call(Object a, Object b) {
+        try {
+            return (Object) this.handle.invokeExact(a, b);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    Object call(Object a, Object b, Object c) {
+        try {
+            return (Object) this.handle.invokeExact(a, b, c);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    Object call(Object a, Object b, Object c, Object d) {
+        try {
+            return (Object) this.handle.invokeExact(a, b, c, d);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    Object callAll(Object[] arguments) {
+        try {
+            return (Object) this.spread.invokeExact(arguments);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<native " + this.name + "/" + this.arity + ">";
+    }
+}
@@ -0,0 +1,56 @@
+package com.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+// Host functions that scripts can call by name. Calls are bound to their
+// function, and argument counts checked, when a program is resolved, so
+// register everything before compiling the programs that use it. A registry
+// must not change while programs are being compiled against it.
+public final class Natives {
+    static final Natives STANDARD = builtins();
+
+    final Map<String, NativeFunction> functions;
+
+    public Natives() {
+        this.functions = new HashMap<>();
+    }
+
+    // A new registry holding the built-in functions, to add to.
+    public static Natives standard() {
+        Natives natives = new Natives();
+        natives.functions.putAll(STANDARD.functions);
+        return natives;
+    }
+
+    // Registers handle under name, replacing any function already there.
+    // Parameters may be any primitive, String, CharSequence, double[] or
+    // Object, or any other type the script's values are instances of.
+    public Natives register(String name, MethodHandle handle) {
+        this.functions.put(name, NativeFunction.of(name, handle));
+        return this;
+    }
+
+    NativeFunction get(String name) {
+        return this.functions.get(name);
+    }
+
+    // Every public static method of Builtins, under its own name.
+    static Natives builtins() {
+        Natives natives = new Natives();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Method m : Builtins.class.getDeclaredMethods()) {
+            if (!Modifier.isStatic(m.getModifiers()) || !Modifier.isPublic(m.getModifiers())) continue;
+            try {
+                natives.register(m.getName(), lookup.unreflect(m));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return natives;
+    }
+}
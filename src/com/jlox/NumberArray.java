@@ -0,0 +1,220 @@
+package com.jlox;
+
+import java.util.Arrays;
+
+// A Lox array of numbers, held unboxed in one double[]. Any number can be
+// stored and elements always read back as doubles. Arrays are passed by
+// reference and are equal only to themselves.
+//
+// The bulk operations run on VectorKernels when the JVM was started with
+// --add-modules jdk.incubator.vector. Otherwise they are plain counted
+// loops over double[] that C2 can still vectorize. Those sums keep four
+// partial sums, as a vector reduction would, so they are not bound by the
+// latency of one chain of adds.
+final class NumberArray {
+    // A constant, so C2 folds away whichever path is not taken.
+    static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    final double[] values;
+
+    NumberArray(double[] values) {
+        this.values = values;
+    }
+
+    static double[] values(Object array) {
+        if (array instanceof NumberArray a) return a.values;
+        throw new RuntimeException("Expected an array but got " + NativeFunction.typeOf(array));
+    }
+
+    static long index(Object index) {
+        return NativeFunction.toLong(index);
+    }
+
+    static double element(Object value) {
+        return NativeFunction.toDouble(value);
+    }
+
+    static int check(double[] values, long index) {
+        if (index < 0 || index >= values.length) {
+            throw new RuntimeException("Index " + index + " out of bounds for length " + values.length);
+        }
+        return (int) index;
+    }
+
+    // array[index]. The array is checked before the index, and both before
+    // a stored value, on every backend.
+    static double load(Object array, Object index) {
+        double[] values = values(array);
+        return values[check(values, index(index))];
+    }
+
+    static double store(Object array, Object index, double value) {
+        double[] values = values(array);
+        values[check(values, index(index))] = value;
+        return value;
+    }
+
+    static Object get(Object array, Object index) {
+        return load(array, index);
+    }
+
+    // array[index] = value, which evaluates to the element as stored.
+    static Object set(Object array, Object index, Object value) {
+        double[] values = values(array);
+        int i = check(values, index(index));
+        values[i] = element(value);
+        return values[i];
+    }
+
+    // Every array a script creates is charged to its Budget first, eight
+    // bytes per element, so an over-limit length fails before allocating.
+    static double[] allocate(int length) {
+        Budget.Meter.chargeArray(length);
+        return new double[length];
+    }
+
+    static double[] sameLength(double[] a, double[] b) {
+        if (a.length != b.length) {
+            throw new RuntimeException("Arrays of length " + a.length + " and " + b.length + " do not match");
+        }
+        return b;
+    }
+
+    static double[] add(double[] a, double[] b) {
+        sameLength(a, b);
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.add(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] + b[i];
+        }
+        return result;
+    }
+
+    static double[] add(double[] a, double b) {
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.add(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] + b;
+        }
+        return result;
+    }
+
+    static double[] multiply(double[] a, double[] b) {
+        sameLength(a, b);
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.multiply(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] * b[i];
+        }
+        return result;
+    }
+
+    static double[] multiply(double[] a, double b) {
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.multiply(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] * b;
+        }
+        return result;
+    }
+
+    static double[] min(double[] a, double[] b) {
+        sameLength(a, b);
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.min(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = Math.min(a[i], b[i]);
+        }
+        return result;
+    }
+
+    static double[] min(double[] a, double b) {
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.min(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = Math.min(a[i], b);
+        }
+        return result;
+    }
+
+    static double[] max(double[] a, double[] b) {
+        sameLength(a, b);
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.max(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = Math.max(a[i], b[i]);
+        }
+        return result;
+    }
+
+    static double[] max(double[] a, double b) {
+        double[] result = allocate(a.length);
+        if (VECTOR) {
+            VectorKernels.max(a, b, result);
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = Math.max(a[i], b);
+        }
+        return result;
+    }
+
+    static double sum(double[] a) {
+        if (VECTOR) return VectorKernels.sum(a);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static double dot(double[] a, double[] b) {
+        sameLength(a, b);
+        if (VECTOR) return VectorKernels.dot(a, b);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.values);
+    }
+}
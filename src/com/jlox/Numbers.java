@@ -0,0 +1,86 @@
+package com.jlox;
+
+// Integer arithmetic for Lox numbers. Integer literals are Longs and stay
+// Longs through +, -, * and exact /; an operation that overflows, or a
+// division with a remainder, produces a Double instead. Mixing a Long with
+// a Double gives a Double.
+final class Numbers {
+    static final int CACHE_LOW = -128;
+    static final int CACHE_HIGH = 1024;
+    static final Long[] CACHE = new Long[CACHE_HIGH - CACHE_LOW];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = (long) (i + CACHE_LOW);
+        }
+    }
+
+    private Numbers() {
+    }
+
+    // Long.valueOf only caches up to 127, which loop counters and indexes
+    // quickly outgrow.
+    static Long box(long value) {
+        if (value >= CACHE_LOW && value < CACHE_HIGH) return CACHE[(int) value - CACHE_LOW];
+        return value;
+    }
+
+    static Object parse(String text) {
+        try {
+            return box(Long.parseLong(text));
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(text);
+        }
+    }
+
+    static Object add(long a, long b) {
+        try {
+            return box(Math.addExact(a, b));
+        } catch (ArithmeticException e) {
+            return (double) a + (double) b;
+        }
+    }
+
+    static Object subtract(long a, long b) {
+        try {
+            return box(Math.subtractExact(a, b));
+        } catch (ArithmeticException e) {
+            return (double) a - (double) b;
+        }
+    }
+
+    static Object multiply(long a, long b) {
+        try {
+            return box(Math.multiplyExact(a, b));
+        } catch (ArithmeticException e) {
+            return (double) a * (double) b;
+        }
+    }
+
+    // Division by zero follows double semantics, as it always has.
+    static Object divide(long a, long b) {
+        if (b == -1) return negate(a);
+        if (b != 0 && a % b == 0) return box(a / b);
+        return (double) a / (double) b;
+    }
+
+    static Object negate(long a) {
+        if (a == Long.MIN_VALUE) return -(double) a;
+        return box(-a);
+    }
+
+    static boolean isNumber(Object o) {
+        return o instanceof Long || o instanceof Double;
+    }
+
+    static double toDouble(Object o) {
+        return ((Number) o).doubleValue();
+    }
+
+    // Equality across representations, so 1 == 1.0. Two Doubles compare as
+    // Double.equals does, and so does a Long against a Double once widened.
+    static boolean equal(Object l, Object r) {
+        if (l instanceof Long a && r instanceof Long b) return a.longValue() == b.longValue();
+        return Double.compare(toDouble(l), toDouble(r)) == 0;
+    }
+}
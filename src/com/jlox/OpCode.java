@@ -0,0 +1,43 @@
+package com.jlox;
+
+final class OpCode {
+    static final byte CONSTANT = 0;
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    static final byte GET_GLOBAL = 5;
+    static final byte SET_GLOBAL = 6;
+
+    static final byte ADD = 7;
+    static final byte SUBTRACT = 8;
+    static final byte MULTIPLY = 9;
+    static final byte DIVIDE = 10;
+    static final byte EQUAL = 11;
+    static final byte NOT_EQUAL = 12;
+    static final byte LESS = 13;
+    static final byte GREATER = 14;
+    static final byte LESS_EQUAL = 15;
+    static final byte GREATER_EQUAL = 16;
+
+    static final byte NOT = 17;
+    static final byte NEGATE = 18;
+    static final byte AND = 19;
+    static final byte OR = 20;
+
+    static final byte PRINT = 21;
+    static final byte JUMP = 22;
+    static final byte JUMP_IF_FALSE = 23;
+    static final byte RETURN = 24;
+    static final byte LOOP = 25;
+    static final byte TICK = 26;
+    // Operand: constant index of the NativeFunction; its arity says how
+    // many arguments to pop.
+    static final byte CALL = 27;
+    // array index -> element; array index value -> value.
+    static final byte GET_INDEX = 28;
+    static final byte SET_INDEX = 29;
+
+    private OpCode() {
+    }
+}
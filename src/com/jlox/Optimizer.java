@@ -0,0 +1,336 @@
+package com.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    int eliminated;
+
+    Optimizer() {
+        this.eliminated = 0;
+    }
+
+    List<Stmt> optimize(List<Stmt> stmts) {
+        Counter counter = new Counter();
+        int before = counter.count(stmts);
+        List<Stmt> out = this.optimizeAll(stmts);
+        this.eliminated += before - counter.count(out);
+        return out;
+    }
+
+    List<Stmt> optimizeAll(List<Stmt> stmts) {
+        List<Stmt> out = new ArrayList<>(stmts.size());
+        for (Stmt stmt : stmts) {
+            Stmt s = this.optimize(stmt);
+            if (s != null) out.add(s);
+        }
+        return out;
+    }
+
+    Stmt optimize(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    static boolean isConstant(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    static Object valueOf(Expr expr) {
+        return ((Expr.Literal) expr).value;
+    }
+
+    // Only integer literals: x * 1 keeps the type of x, while x * 1.0 would
+    // turn an integer x into a double.
+    static boolean isLiteral(Expr expr, long value) {
+        return expr instanceof Expr.Literal l && l.value instanceof Long n && n == value;
+    }
+
+    // Expressions that either produce a number or fail, so that an identity
+    // like x * 1 can be dropped without hiding a type error.
+    static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal l) return Numbers.isNumber(l.value);
+        if (expr instanceof Expr.Unary u) return u.operator.type == TokenType.MINUS;
+        if (expr instanceof Expr.Index) return true;
+        if (expr instanceof Expr.Binary b) {
+            switch (b.operator.type) {
+                case TokenType.MINUS, TokenType.MULTIPLY, TokenType.DIVIDE -> {
+                    return true;
+                }
+                case TokenType.PLUS -> {
+                    return isNumeric(b.left) && isNumeric(b.right);
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean isBoolean(Expr expr) {
+        if (expr instanceof Expr.Literal l) return l.value instanceof Boolean;
+        if (expr instanceof Expr.Logical) return true;
+        if (expr instanceof Expr.Unary u) return u.operator.type == TokenType.NOT;
+        if (expr instanceof Expr.Binary b) {
+            switch (b.operator.type) {
+                case TokenType.EQUALS, TokenType.NOT_EQUALS, TokenType.LESS_THAN, TokenType.GREATER_THAN,
+                     TokenType.LESS_THAN_OR_EQUAL, TokenType.GREATER_THAN_OR_EQUAL -> {
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = this.optimize(expr.left);
+        Expr right = this.optimize(expr.right);
+        TokenType op = expr.operator.type;
+
+        if (isConstant(left) && isConstant(right)) {
+            try {
+                return new Expr.Literal(Rope.flatten(Lox.binary(op, valueOf(left), valueOf(right))));
+            } catch (RuntimeException e) {
+                // Leave it for the interpreter to report at runtime.
+            }
+        }
+
+        if (op == TokenType.MULTIPLY && isLiteral(right, 1) && isNumeric(left)) return left;
+        if (op == TokenType.MULTIPLY && isLiteral(left, 1) && isNumeric(right)) return right;
+        if (op == TokenType.DIVIDE && isLiteral(right, 1) && isNumeric(left)) return left;
+        if (op == TokenType.MINUS && isLiteral(right, 0) && isNumeric(left)) return left;
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        expr.value = this.optimize(expr.value);
+        return expr;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = this.optimize(expr.right);
+        TokenType op = expr.operator.type;
+
+        if (isConstant(right)) {
+            try {
+                return new Expr.Literal(Lox.unary(op, valueOf(right)));
+            } catch (RuntimeException e) {
+                // Leave it for the interpreter to report at runtime.
+            }
+        }
+
+        if (right instanceof Expr.Unary inner && inner.operator.type == op) {
+            if (op == TokenType.MINUS && isNumeric(inner.right)) return inner.right;
+            if (op == TokenType.NOT && isBoolean(inner.right)) return inner.right;
+        }
+
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = this.optimize(expr.left);
+        Expr right = this.optimize(expr.right);
+
+        if (isConstant(left) && isConstant(right)) {
+            return new Expr.Literal(Lox.logical(expr.op.type, valueOf(left), valueOf(right)));
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.op, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return this.optimize(expr.expression);
+    }
+
+    // Natives may have side effects, so calls are never folded.
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        expr.arguments.replaceAll(this::optimize);
+        return expr;
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        Expr array = this.optimize(expr.array);
+        Expr index = this.optimize(expr.index);
+        if (array == expr.array && index == expr.index) return expr;
+        return new Expr.Index(array, expr.bracket, index);
+    }
+
+    @Override
+    public Expr visitSetIndexExpr(Expr.SetIndex expr) {
+        Expr array = this.optimize(expr.array);
+        Expr index = this.optimize(expr.index);
+        Expr value = this.optimize(expr.value);
+        if (array == expr.array && index == expr.index && value == expr.value) return expr;
+        return new Expr.SetIndex(array, expr.bracket, index, value);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+        Expr e = this.optimize(stmt.expression);
+        if (e instanceof Expr.Literal || e instanceof Expr.Variable) return null;
+        stmt.expression = e;
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.PrintStmt stmt) {
+        stmt.expression = this.optimize(stmt.expression);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitBlock(Stmt.Block stmt) {
+        stmt.statements = this.optimizeAll(stmt.statements);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.IfStmt stmt) {
+        Expr condition = this.optimize(stmt.condition);
+        if (isConstant(condition)) {
+            Stmt taken = Lox.isTruth(valueOf(condition)) ? stmt.thenBranch : stmt.elseBranch;
+            return this.optimize(taken);
+        }
+
+        stmt.condition = condition;
+        stmt.thenBranch = this.optimize(stmt.thenBranch);
+        stmt.elseBranch = this.optimize(stmt.elseBranch);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.WhileStmt stmt) {
+        Expr condition = this.optimize(stmt.condition);
+        if (isConstant(condition) && !Lox.isTruth(valueOf(condition))) return null;
+
+        stmt.condition = condition;
+        stmt.body = this.optimize(stmt.body);
+        if (stmt.body == null) stmt.body = new Stmt.Block(new ArrayList<>());
+        return stmt;
+    }
+
+    static class Counter implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        int count(List<Stmt> stmts) {
+            int n = 0;
+            for (Stmt stmt : stmts) {
+                n += this.count(stmt);
+            }
+            return n;
+        }
+
+        int count(Stmt stmt) {
+            return stmt == null ? 0 : stmt.accept(this);
+        }
+
+        int count(Expr expr) {
+            return expr.accept(this);
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            return 1 + this.count(expr.left) + this.count(expr.right);
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return 1 + this.count(expr.value);
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            return 1 + this.count(expr.right);
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            return 1 + this.count(expr.left) + this.count(expr.right);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return 1 + this.count(expr.expression);
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            int n = 1;
+            for (Expr argument : expr.arguments) {
+                n += this.count(argument);
+            }
+            return n;
+        }
+
+        @Override
+        public Integer visitIndexExpr(Expr.Index expr) {
+            return 1 + this.count(expr.array) + this.count(expr.index);
+        }
+
+        @Override
+        public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+            return 1 + this.count(expr.array) + this.count(expr.index) + this.count(expr.value);
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            return 1 + this.count(stmt.expression);
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.PrintStmt stmt) {
+            return 1 + this.count(stmt.expression);
+        }
+
+        @Override
+        public Integer visitBlock(Stmt.Block stmt) {
+            return 1 + this.count(stmt.statements);
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.IfStmt stmt) {
+            return 1 + this.count(stmt.condition) + this.count(stmt.thenBranch) + this.count(stmt.elseBranch);
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.WhileStmt stmt) {
+            return 1 + this.count(stmt.condition) + this.count(stmt.body);
+        }
+    }
+}
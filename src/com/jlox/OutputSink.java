@@ -0,0 +1,262 @@
+package com.jlox;
+
+import java.io.Console;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Where print statements go. Sinks are not thread safe; each Lox instance
+// owns its own. Anything buffered is only guaranteed to be written after
+// flush() or close().
+interface OutputSink {
+    String NEWLINE = System.lineSeparator();
+
+    void println(Object value);
+
+    void flush();
+
+    default void close() {
+        this.flush();
+    }
+
+    enum FlushPolicy {
+        // Flush only when the buffer fills up or flush() is called.
+        FULL,
+        // Flush after every line, for interactive use.
+        LINE,
+    }
+
+    static OutputSink stdout() {
+        FlushPolicy policy = Terminal.isTerminal() ? FlushPolicy.LINE : FlushPolicy.FULL;
+        return new Buffered(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), Buffered.DEFAULT_SIZE, policy);
+    }
+
+    // Since JDK 22 System.console() is non-null even when output is
+    // redirected, so a console alone no longer means a terminal. Ask
+    // Console.isTerminal() where it exists; on older JDKs a console is only
+    // returned for a terminal. Looked up reflectively because the build
+    // targets 21.
+    final class Terminal {
+        static final MethodHandle IS_TERMINAL = isTerminalHandle();
+
+        private Terminal() {
+        }
+
+        static MethodHandle isTerminalHandle() {
+            try {
+                return MethodHandles.publicLookup().findVirtual(Console.class, "isTerminal", MethodType.methodType(boolean.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        static boolean isTerminal() {
+            Console console = System.console();
+            if (console == null) return false;
+            if (IS_TERMINAL == null) return true;
+            try {
+                return (boolean) IS_TERMINAL.invokeExact(console);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    static OutputSink file(Path path) {
+        return new Channel(path, Channel.DEFAULT_SIZE);
+    }
+
+    // Collects lines into a char buffer and hands them to a Writer in bulk.
+    class Buffered implements OutputSink {
+        static final int DEFAULT_SIZE = 1 << 16;
+
+        final Writer writer;
+        final FlushPolicy policy;
+        final char[] buffer;
+        int length;
+
+        Buffered(Writer writer, int size, FlushPolicy policy) {
+            if (size < NEWLINE.length()) {
+                throw new IllegalArgumentException("Buffer size " + size + " is too small");
+            }
+            this.writer = writer;
+            this.policy = policy;
+            this.buffer = new char[size];
+            this.length = 0;
+        }
+
+        @Override
+        public void println(Object value) {
+            this.write(String.valueOf(value));
+            this.write(NEWLINE);
+            if (this.policy == FlushPolicy.LINE) this.flush();
+        }
+
+        void write(String s) {
+            int n = s.length();
+            int from = 0;
+            while (from < n) {
+                if (this.length == this.buffer.length) this.drain();
+                int count = Math.min(n - from, this.buffer.length - this.length);
+                s.getChars(from, from + count, this.buffer, this.length);
+                this.length += count;
+                from += count;
+            }
+        }
+
+        void drain() {
+            try {
+                this.writer.write(this.buffer, 0, this.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.length = 0;
+        }
+
+        @Override
+        public void flush() {
+            this.drain();
+            try {
+                this.writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            this.flush();
+            try {
+                this.writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Encodes straight into a direct buffer and writes it to a channel when
+    // full, skipping the Writer and heap byte[] copies.
+    class Channel implements OutputSink {
+        static final int DEFAULT_SIZE = 1 << 20;
+
+        final FileChannel channel;
+        final ByteBuffer buffer;
+
+        Channel(Path path, int size) {
+            this(open(path), size);
+        }
+
+        Channel(FileChannel channel, int size) {
+            if (size < 4) {
+                throw new IllegalArgumentException("Buffer size " + size + " is too small");
+            }
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+
+        static FileChannel open(Path path) {
+            try {
+                return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void println(Object value) {
+            this.write(String.valueOf(value));
+            this.write(NEWLINE);
+        }
+
+        // UTF-8 by hand so ASCII, the common case, is one put per char.
+        void write(String s) {
+            ByteBuffer b = this.buffer;
+            int n = s.length();
+            for (int i = 0; i < n; i++) {
+                if (b.remaining() < 4) this.drain();
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    b.put((byte) c);
+                } else if (c < 0x800) {
+                    b.put((byte) (0xc0 | c >> 6));
+                    b.put((byte) (0x80 | c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b.put((byte) (0xf0 | cp >> 18));
+                    b.put((byte) (0x80 | cp >> 12 & 0x3f));
+                    b.put((byte) (0x80 | cp >> 6 & 0x3f));
+                    b.put((byte) (0x80 | cp & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    b.put((byte) '?');
+                } else {
+                    b.put((byte) (0xe0 | c >> 12));
+                    b.put((byte) (0x80 | c >> 6 & 0x3f));
+                    b.put((byte) (0x80 | c & 0x3f));
+                }
+            }
+        }
+
+        void drain() {
+            this.buffer.flip();
+            try {
+                while (this.buffer.hasRemaining()) {
+                    this.channel.write(this.buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.buffer.clear();
+        }
+
+        @Override
+        public void flush() {
+            this.drain();
+        }
+
+        @Override
+        public void close() {
+            this.drain();
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Keeps everything in memory, for embedding. Captured text is charged
+    // to the run's Budget like any other string it builds.
+    class Capture implements OutputSink {
+        final StringBuilder text;
+
+        Capture() {
+            this.text = new StringBuilder();
+        }
+
+        @Override
+        public void println(Object value) {
+            String line = String.valueOf(value);
+            Budget.Meter.chargeChars((long) line.length() + NEWLINE.length());
+            this.text.append(line).append(NEWLINE);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        String contents() {
+            return this.text.toString();
+        }
+    }
+}
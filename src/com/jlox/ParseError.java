@@ -0,0 +1,11 @@
+package com.jlox;
+
+// Thrown to unwind the parser to the next statement boundary. The error
+// itself is already in Diagnostics, so no stack trace is captured.
+class ParseError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ParseError(String message) {
+        super(message, null, false, false);
+    }
+}
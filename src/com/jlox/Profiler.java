@@ -0,0 +1,283 @@
+package com.jlox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Opt-in execution profiler for the tree walker. Lox routes eval/execute
+// through it only when a profiler is attached, so the unprofiled path pays
+// one null check per node.
+//
+// Time is recorded as self time per source line and per call path (a calling
+// context tree of "Kind@line" frames) so it can be written as folded stacks
+// for flamegraph tools. Bytes allocated are recorded per statement as self
+// bytes too: nested statements and the profiler's own bookkeeping are
+// subtracted. Labels and line stats are looked up once per node, so a
+// profiled run allocates only the first time it reaches a node or path.
+class Profiler {
+    static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static class Frame {
+        final String label;
+        final int line;
+        final Frame parent;
+        final Map<String, Frame> children;
+        long count;
+        long selfNanos;
+
+        Frame(String label, int line, Frame parent) {
+            this.label = label;
+            this.line = line;
+            this.parent = parent;
+            this.children = new LinkedHashMap<>();
+        }
+    }
+
+    static class LineStats {
+        final int line;
+        long count;
+        long selfNanos;
+        long allocatedBytes;
+
+        LineStats(int line) {
+            this.line = line;
+        }
+    }
+
+    // What the profiler needs about one node, computed on first visit.
+    static class Site {
+        final String label;
+        final LineStats stats;
+
+        Site(String label, LineStats stats) {
+            this.label = label;
+            this.stats = stats;
+        }
+    }
+
+    final Frame root;
+    final Map<Integer, LineStats> lines;
+    final Map<Object, Site> sites;
+    final LineFinder finder;
+    Frame current;
+    long childNanos;
+    long childBytes;
+    // Bytes the profiler allocated for sites and frames, kept out of the
+    // statements' counts.
+    long overheadBytes;
+
+    Profiler() {
+        this.root = new Frame("root", 0, null);
+        this.lines = new HashMap<>();
+        this.sites = new IdentityHashMap<>();
+        this.finder = new LineFinder();
+        this.current = this.root;
+        this.childNanos = 0;
+        this.childBytes = 0;
+        this.overheadBytes = 0;
+    }
+
+    Object eval(Lox lox, Expr expr) {
+        Site site = this.site(expr);
+        this.enter(site);
+        long saved = this.childNanos;
+        this.childNanos = 0;
+        long start = System.nanoTime();
+        try {
+            return expr.accept(lox);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            this.exit(site, elapsed);
+            this.childNanos = saved + elapsed;
+        }
+    }
+
+    void execute(Lox lox, Stmt stmt) {
+        Site site = this.site(stmt);
+        this.enter(site);
+        long saved = this.childNanos;
+        long savedBytes = this.childBytes;
+        this.childNanos = 0;
+        this.childBytes = 0;
+        long overhead = this.overheadBytes;
+        long allocated = allocated();
+        long start = System.nanoTime();
+        try {
+            stmt.accept(lox);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long bytes = allocated() - allocated - (this.overheadBytes - overhead);
+            site.stats.allocatedBytes += bytes - this.childBytes;
+            this.exit(site, elapsed);
+            this.childNanos = saved + elapsed;
+            this.childBytes = savedBytes + bytes;
+        }
+    }
+
+    static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    void enter(Site site) {
+        Frame f = this.current.children.get(site.label);
+        if (f == null) {
+            long before = allocated();
+            f = new Frame(site.label, site.stats.line, this.current);
+            this.current.children.put(site.label, f);
+            this.overheadBytes += allocated() - before;
+        }
+        this.current = f;
+    }
+
+    void exit(Site site, long elapsed) {
+        long self = elapsed - this.childNanos;
+        this.current.count++;
+        this.current.selfNanos += self;
+        LineStats stats = site.stats;
+        stats.count++;
+        stats.selfNanos += self;
+        this.current = this.current.parent;
+    }
+
+    Site site(Object node) {
+        Site site = this.sites.get(node);
+        if (site == null) {
+            long before = allocated();
+            Integer found = node instanceof Expr e ? e.accept(this.finder) : ((Stmt) node).accept(this.finder);
+            // Literals and groupings carry no token; charge them to the parent's line.
+            int line = found != null ? found : this.current.line;
+            LineStats stats = this.lines.get(line);
+            if (stats == null) {
+                stats = new LineStats(line);
+                this.lines.put(line, stats);
+            }
+            site = new Site(node.getClass().getSimpleName() + "@" + (line + 1), stats);
+            this.sites.put(node, site);
+            this.overheadBytes += allocated() - before;
+        }
+        return site;
+    }
+
+    void report(PrintStream out) {
+        List<LineStats> sorted = new ArrayList<>(this.lines.values());
+        sorted.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+        long total = 0;
+        for (LineStats s : sorted) {
+            total += s.selfNanos;
+        }
+        out.printf(Locale.ROOT, "%6s %12s %7s %12s %14s%n", "line", "self ms", "%", "count", "alloc bytes");
+        for (LineStats s : sorted) {
+            out.printf(Locale.ROOT, "%6d %12.3f %6.1f%% %12d %14d%n",
+                    s.line + 1, s.selfNanos / 1e6, total == 0 ? 0.0 : 100.0 * s.selfNanos / total, s.count, s.allocatedBytes);
+        }
+    }
+
+    // One "frame;frame;frame nanos" line per call path, as flamegraph.pl expects.
+    void writeFolded(PrintStream out) {
+        for (Frame child : this.root.children.values()) {
+            this.writeFolded(out, child, child.label);
+        }
+    }
+
+    void writeFolded(PrintStream out, Frame frame, String path) {
+        if (frame.selfNanos > 0) {
+            out.println(path + " " + frame.selfNanos);
+        }
+        for (Frame child : frame.children.values()) {
+            this.writeFolded(out, child, path + ";" + child.label);
+        }
+    }
+
+    // First token line found in a subtree, or null when it has no tokens.
+    static class LineFinder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        static Integer first(Integer a, Integer b) {
+            return a != null ? a : b;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            return first(expr.left.accept(this), expr.operator.line);
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return expr.name.line;
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return expr.var.line;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            return expr.operator.line;
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            return first(expr.left.accept(this), expr.op.line);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            return expr.name.line;
+        }
+
+        @Override
+        public Integer visitIndexExpr(Expr.Index expr) {
+            return first(expr.array.accept(this), expr.bracket.line);
+        }
+
+        @Override
+        public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+            return first(expr.array.accept(this), expr.bracket.line);
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            return stmt.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.PrintStmt stmt) {
+            return stmt.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitBlock(Stmt.Block stmt) {
+            for (Stmt s : stmt.statements) {
+                Integer line = s.accept(this);
+                if (line != null) return line;
+            }
+            return null;
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.IfStmt stmt) {
+            return stmt.condition.accept(this);
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.WhileStmt stmt) {
+            return stmt.condition.accept(this);
+        }
+    }
+}
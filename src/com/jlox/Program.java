@@ -0,0 +1,95 @@
+package com.jlox;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A parsed, optimized and resolved script. Programs are immutable once
+// compiled and can be executed any number of times, from any number of
+// threads; each run gets its own Execution holding variables and output.
+//
+// A program keeps either its syntax tree, which runs on the tree walker and
+// can tier up hot loops, or only a flat Arena, which is several times
+// smaller and suits caches holding many programs.
+public final class Program {
+    // Rough per-node footprint: the node, its Token and the Token's strings.
+    static final int BYTES_PER_NODE = 96;
+
+    // Exactly one of statements and arena is set.
+    final List<Stmt> statements;
+    final Arena arena;
+    // Variable name to slot, for Execution.set and get. Lookups need no
+    // interning, so host code can pass any String.
+    final Map<String, Integer> slots;
+    final long estimatedBytes;
+
+    Program(List<Stmt> statements, List<Object> names) {
+        this.statements = Collections.unmodifiableList(statements);
+        this.arena = null;
+        this.slots = slots(names);
+        this.estimatedBytes = (long) new Optimizer.Counter().count(statements) * BYTES_PER_NODE;
+    }
+
+    Program(Arena arena, List<Object> names) {
+        this.statements = null;
+        this.arena = arena;
+        this.slots = slots(names);
+        this.estimatedBytes = arena.estimatedBytes();
+    }
+
+    public static Program compile(String source) {
+        return compile(source, Natives.STANDARD);
+    }
+
+    // Calls in source are bound to the functions in natives.
+    public static Program compile(String source, Natives natives) {
+        Resolver resolver = new Resolver(natives);
+        return new Program(prepare(source, resolver), resolver.names);
+    }
+
+    public static Program compileCompact(String source) {
+        return compileCompact(source, Natives.STANDARD);
+    }
+
+    public static Program compileCompact(String source, Natives natives) {
+        Resolver resolver = new Resolver(natives);
+        return new Program(Arena.of(prepare(source, resolver)), resolver.names);
+    }
+
+    static Map<String, Integer> slots(List<Object> names) {
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            slots.put(names.get(i).toString(), i);
+        }
+        return Collections.unmodifiableMap(slots);
+    }
+
+    static List<Stmt> prepare(String source, Resolver resolver) {
+        List<Stmt> stmts = new Interpreter(new Scanner(source).scanBuffer()).Parse();
+        stmts = new Optimizer().optimize(stmts);
+        resolver.resolve(stmts);
+        return stmts;
+    }
+
+    public boolean isCompact() {
+        return this.arena != null;
+    }
+
+    public long estimatedBytes() {
+        return this.estimatedBytes;
+    }
+
+    public int slotCount() {
+        return this.slots.size();
+    }
+
+    int slotOf(String name) {
+        Integer slot = this.slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public Execution newExecution() {
+        return new Execution(this);
+    }
+}
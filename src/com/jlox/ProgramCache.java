@@ -0,0 +1,224 @@
+package com.jlox;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caches compiled Programs by a SHA-256 hash of their source, bounded by
+// entry count and by estimated retained bytes. The source itself is not
+// kept. A compact cache stores programs as Arenas, fitting several times as
+// many in the same byte budget.
+//
+// Lookups are lock-free and write nothing shared: recency is one referenced
+// bit per entry, set only when it is clear. Eviction is CLOCK over a queue
+// of entries, so each eviction costs amortized constant time. Concurrent
+// misses on the same source wait for one compile instead of each compiling.
+public final class ProgramCache {
+    static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    // Entry footprint besides its program: the key, entry and future.
+    static final int ENTRY_BYTES = 160;
+
+    final ConcurrentHashMap<Key, Entry> entries;
+    // Completed entries in CLOCK order. Removed entries are skipped.
+    final ConcurrentLinkedQueue<Entry> clock;
+    final long maxEntries;
+    final long maxBytes;
+    final boolean compact;
+    final Natives natives;
+    final AtomicLong bytes;
+    final LongAdder hits;
+    final LongAdder misses;
+    final LongAdder evictions;
+
+    static final class Key {
+        final byte[] digest;
+        final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        static Key of(String source) {
+            return new Key(SHA_256.get().digest(source.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Arrays.equals(this.digest, k.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    static final class Entry {
+        // An entry's bytes are charged once when its compile completes and
+        // released once when it leaves the map, whichever order they race in.
+        static final int PENDING = 0;
+        static final int CHARGED = 1;
+        static final int RELEASED = 2;
+
+        final Key key;
+        final CompletableFuture<Program> program;
+        final AtomicInteger state;
+        long bytes;
+        volatile boolean referenced;
+
+        Entry(Key key) {
+            this.key = key;
+            this.program = new CompletableFuture<>();
+            this.state = new AtomicInteger(PENDING);
+        }
+    }
+
+    public ProgramCache(long maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, false);
+    }
+
+    public ProgramCache(long maxEntries, long maxBytes, boolean compact) {
+        this(maxEntries, maxBytes, compact, Natives.STANDARD);
+    }
+
+    // Programs are compiled against natives.
+    public ProgramCache(long maxEntries, long maxBytes, boolean compact, Natives natives) {
+        this.entries = new ConcurrentHashMap<>();
+        this.clock = new ConcurrentLinkedQueue<>();
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.compact = compact;
+        this.natives = natives;
+        this.bytes = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    public Program get(String source) {
+        Key key = Key.of(source);
+        Entry e = this.entries.get(key);
+        if (e == null) {
+            Entry created = new Entry(key);
+            e = this.entries.putIfAbsent(key, created);
+            if (e == null) {
+                return this.compile(created, source);
+            }
+        }
+
+        this.hits.increment();
+        if (!e.referenced) {
+            e.referenced = true;
+        }
+        return join(e.program);
+    }
+
+    Program compile(Entry e, String source) {
+        this.misses.increment();
+        Program program;
+        try {
+            program = this.compact ? Program.compileCompact(source, this.natives) : Program.compile(source, this.natives);
+        } catch (RuntimeException | Error failure) {
+            // Waiters see the same error; the next get compiles again.
+            this.entries.remove(e.key, e);
+            e.state.set(Entry.RELEASED);
+            e.program.completeExceptionally(failure);
+            throw failure;
+        }
+        e.bytes = program.estimatedBytes() + ENTRY_BYTES;
+        e.program.complete(program);
+        if (e.state.compareAndSet(Entry.PENDING, Entry.CHARGED)) {
+            this.bytes.addAndGet(e.bytes);
+            this.clock.offer(e);
+            this.evict();
+        }
+        return program;
+    }
+
+    static Program join(CompletableFuture<Program> program) {
+        try {
+            return program.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            if (e.getCause() instanceof Error r) throw r;
+            throw e;
+        }
+    }
+
+    // CLOCK: an entry referenced since the hand last passed gets its bit
+    // cleared and another lap; otherwise it is evicted.
+    synchronized void evict() {
+        while (this.entries.size() > this.maxEntries || (this.bytes.get() > this.maxBytes && this.entries.size() > 1)) {
+            Entry e = this.clock.poll();
+            if (e == null) break;
+            if (e.state.get() != Entry.CHARGED) continue;
+            if (e.referenced) {
+                e.referenced = false;
+                this.clock.offer(e);
+                continue;
+            }
+            if (this.remove(e)) {
+                this.evictions.increment();
+            }
+        }
+    }
+
+    boolean remove(Entry e) {
+        if (!this.entries.remove(e.key, e)) return false;
+        if (e.state.getAndSet(Entry.RELEASED) == Entry.CHARGED) {
+            this.bytes.addAndGet(-e.bytes);
+        }
+        return true;
+    }
+
+    // Entries compiling while the cache is cleared are dropped when they
+    // complete, and their bytes are never charged.
+    public void clear() {
+        for (Entry e : this.entries.values()) {
+            this.remove(e);
+        }
+        this.clock.removeIf(e -> e.state.get() == Entry.RELEASED);
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long estimatedBytes() {
+        return this.bytes.get();
+    }
+
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ProgramCache{size=" + this.size() + ", bytes=" + this.estimatedBytes() + ", hits=" + this.hits()
+                + ", misses=" + this.misses() + ", evictions=" + this.evictions() + "}";
+    }
+}
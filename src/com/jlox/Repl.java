@@ -0,0 +1,146 @@
+package com.jlox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+// Interactive loop over one long-lived Lox instance, so variables, resolved
+// slots and JIT-compiled interpreter code carry over between inputs.
+//
+// Input is buffered until braces and parentheses balance. Commands:
+//   :load PATH   run a file in the current session
+//   :reload      run the loaded file again, re-parsing only changed lines
+//   :vars        print the variables
+//   :quit        exit
+class Repl {
+    Lox lox;
+    BufferedReader in;
+    PrintStream err;
+    // The last file loaded, kept parsed for :reload.
+    String loadedPath;
+    IncrementalParser loaded;
+
+    Repl(Lox lox) {
+        this.lox = lox;
+        this.in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        this.err = System.err;
+    }
+
+    void run() throws IOException {
+        StringBuilder buffer = new StringBuilder();
+        while (true) {
+            this.prompt(buffer.isEmpty() ? "> " : "... ");
+            String line = this.in.readLine();
+            if (line == null) break;
+
+            if (buffer.isEmpty() && line.startsWith(":")) {
+                if (!this.command(line.trim())) break;
+                continue;
+            }
+
+            buffer.append(line).append('\n');
+            if (depth(buffer) > 0) continue;
+
+            String source = buffer.toString();
+            buffer.setLength(0);
+            if (!source.isBlank()) this.eval(source);
+        }
+    }
+
+    void prompt(String prompt) {
+        this.lox.out.flush();
+        System.out.print(prompt);
+        System.out.flush();
+    }
+
+    boolean command(String line) {
+        if (line.equals(":quit") || line.equals(":q")) return false;
+        if (line.equals(":vars")) {
+            this.lox.printSymbolTable();
+        } else if (line.startsWith(":load ")) {
+            String path = line.substring(6).trim();
+            String source = this.read(path);
+            if (source == null) return true;
+            this.loadedPath = path;
+            this.loaded = null;
+            this.timed(() -> {
+                this.loaded = new IncrementalParser(source);
+                this.runLoaded();
+            });
+        } else if (line.equals(":reload")) {
+            if (this.loadedPath == null) {
+                this.err.println("Nothing loaded");
+                return true;
+            }
+            String source = this.read(this.loadedPath);
+            if (source == null) return true;
+            this.timed(() -> {
+                if (this.loaded == null) this.loaded = new IncrementalParser(source);
+                else this.loaded.replace(source);
+                this.err.println("(re-parsed " + this.loaded.reparsedLines + " lines, reused " + this.loaded.reusedUnits + " statements)");
+                this.runLoaded();
+            });
+        } else {
+            this.err.println("Unknown command " + line);
+        }
+        return true;
+    }
+
+    // A file that cannot be read is reported like an evaluation error and
+    // leaves the session running.
+    String read(String path) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        } catch (IOException | InvalidPathException e) {
+            this.err.println("Error: Cannot read " + path + ": " + e);
+            return null;
+        }
+    }
+
+    void runLoaded() {
+        this.lox.execute(this.lox.prepare(this.loaded.statements()));
+    }
+
+    void eval(String source) {
+        this.timed(() -> this.lox.run(source));
+    }
+
+    void timed(Runnable body) {
+        long start = System.nanoTime();
+        try {
+            body.run();
+        } catch (RuntimeException e) {
+            this.lox.out.flush();
+            this.err.println("Error: " + e.getMessage());
+        }
+        this.lox.out.flush();
+        this.err.printf(Locale.ROOT, "(%.3f ms)%n", (System.nanoTime() - start) / 1e6);
+    }
+
+    // Open braces, parentheses and brackets, ignoring strings and line comments.
+    static int depth(CharSequence s) {
+        int depth = 0;
+        boolean string = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (string) {
+                if (c == '"') string = false;
+            } else if (c == '"') {
+                string = true;
+            } else if (c == '/' && i + 1 < s.length() && s.charAt(i + 1) == '/') {
+                while (i < s.length() && s.charAt(i) != '\n') i++;
+            } else if (c == '{' || c == '(' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ')' || c == ']') {
+                depth--;
+            }
+        }
+        return string ? depth + 1 : depth;
+    }
+}
@@ -0,0 +1,167 @@
+package com.jlox;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    Map<Object, Integer> slots;
+    List<Object> names;
+    Natives natives;
+    // Errors from the last resolve(List).
+    Diagnostics diagnostics;
+
+    Resolver() {
+        this(Natives.STANDARD);
+    }
+
+    Resolver(Natives natives) {
+        this.slots = new IdentityHashMap<>();
+        this.names = new ArrayList<>();
+        this.natives = natives;
+        this.diagnostics = new Diagnostics();
+    }
+
+    // Throws a ParseError listing every call to an unknown function or
+    // with the wrong number of arguments.
+    void resolve(List<Stmt> stmts) {
+        this.diagnostics = new Diagnostics();
+        for (Stmt stmt : stmts) {
+            this.resolve(stmt);
+        }
+        this.diagnostics.check();
+    }
+
+    void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    int slotOf(Object name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.names.size();
+            this.slots.put(name, slot);
+            this.names.add(name);
+        }
+        return slot;
+    }
+
+    int slotCount() {
+        return this.names.size();
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        this.resolve(expr.left);
+        this.resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        this.resolve(expr.value);
+        expr.slot = this.slotOf(expr.name.literal);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        expr.slot = this.slotOf(expr.var.literal);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        this.resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        this.resolve(expr.left);
+        this.resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        this.resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        for (Expr argument : expr.arguments) {
+            this.resolve(argument);
+        }
+        NativeFunction function = this.natives.get((String) expr.name.literal);
+        if (function == null) {
+            this.diagnostics.report(expr.name, "Undefined function");
+        } else if (function.arity != expr.arguments.size()) {
+            this.diagnostics.report(expr.name, "Expected " + function.arity + " argument(s) but got " + expr.arguments.size());
+        } else {
+            expr.function = function;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        this.resolve(expr.array);
+        this.resolve(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        this.resolve(expr.array);
+        this.resolve(expr.index);
+        this.resolve(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+        this.resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.PrintStmt stmt) {
+        this.resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Stmt.Block stmt) {
+        for (Stmt s : stmt.statements) {
+            this.resolve(s);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.IfStmt stmt) {
+        this.resolve(stmt.condition);
+        this.resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null) this.resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.WhileStmt stmt) {
+        this.resolve(stmt.condition);
+        this.resolve(stmt.body);
+        return null;
+    }
+}
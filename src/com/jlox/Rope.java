@@ -0,0 +1,103 @@
+package com.jlox;
+
+import java.util.ArrayDeque;
+
+// A lazily concatenated string. Concatenation is O(1) once the result is
+// longer than FLAT_LIMIT; the characters are copied once, the first time
+// the value is printed or compared, and the flat String is kept.
+//
+// Lox string values are either a String or a Rope. Anything that needs the
+// characters goes through toString().
+final class Rope implements CharSequence {
+    static final int FLAT_LIMIT = 128;
+
+    // Each side is a String or a Rope; both are null once flattened.
+    Object left;
+    Object right;
+    final int length;
+    String flat;
+
+    Rope(Object left, Object right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    static Object concat(Object l, Object r) {
+        int ll = ((CharSequence) l).length();
+        int rl = ((CharSequence) r).length();
+        // Checked as a long, before anything else, so an overflowing length
+        // can never pass for a short one.
+        if ((long) ll + rl > Integer.MAX_VALUE) {
+            throw new RuntimeException("String too long");
+        }
+        // The logical length is only checked against the length limit.
+        // What is charged is the chars a concatenation adds, the shorter
+        // side; re-copying the other side is at most FLAT_LIMIT chars per
+        // operation. With the one copy made by toString, an append loop is
+        // charged about twice its final string, not once per append.
+        Budget.Meter.checkLength((long) ll + rl);
+        if (ll + rl <= FLAT_LIMIT) {
+            Budget.Meter.chargeChars(Math.min(ll, rl));
+            return l.toString().concat(r.toString());
+        }
+        // Appending a short piece to a rope that ends in a short piece
+        // merges the two, so building a string one character at a time
+        // doesn't cost a node per character.
+        if (l instanceof Rope rope && rope.flat == null && rl < FLAT_LIMIT
+                && rope.right instanceof String tail && tail.length() + rl <= FLAT_LIMIT) {
+            Budget.Meter.chargeChars(rl);
+            return new Rope(rope.left, tail.concat(r.toString()), ll + rl);
+        }
+        return new Rope(l, r, ll + rl);
+    }
+
+    static Object flatten(Object value) {
+        return value instanceof Rope rope ? rope.toString() : value;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.toString().subSequence(start, end);
+    }
+
+    // Fills the result from the end, visiting right children first. Ropes
+    // built by repeated appends lean left, so the explicit stack stays
+    // shallow however long the chain is.
+    @Override
+    public String toString() {
+        if (this.flat != null) return this.flat;
+
+        Budget.Meter.chargeChars(this.length);
+        char[] chars = new char[this.length];
+        int end = this.length;
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object part = pending.pop();
+            if (part instanceof Rope rope && rope.flat == null) {
+                pending.push(rope.left);
+                pending.push(rope.right);
+                continue;
+            }
+            String s = part.toString();
+            end -= s.length();
+            s.getChars(0, s.length(), chars, end);
+        }
+
+        this.flat = new String(chars);
+        this.left = null;
+        this.right = null;
+        return this.flat;
+    }
+}
@@ -1,39 +1,104 @@
 package com.jlox;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 class Scanner {
-    String source;
+    static final int BUFFER_SIZE = 8192;
+
+    char[] source;
+    int limit;
+    Reader reader;
     int line;
     int current;
     int start;
-    List<Token> tokens;
-    Map<String, TokenType> keywords;
-
-    void buildKeywords() {
-        this.keywords.put("nil", TokenType.NIL);
-        this.keywords.put("and", TokenType.AND);
-        this.keywords.put("or", TokenType.OR);
-        this.keywords.put("if", TokenType.IF);
-        this.keywords.put("else", TokenType.ELSE);
-        this.keywords.put("true", TokenType.TRUE);
-        this.keywords.put("false", TokenType.FALSE);
-        this.keywords.put("pass", TokenType.PASS);
-        this.keywords.put("return", TokenType.RETURN);
-        this.keywords.put("print", TokenType.PRINT);
+    // Where the current line begins; shifted with the window, so it can be
+    // negative once the start of the line has been slid out.
+    int lineStart;
+    // Line and line start where the current token began. A string can run
+    // over newlines, so these can differ from line and lineStart by the
+    // time the token is emitted.
+    int tokenLine;
+    int tokenLineStart;
+    TokenType pending;
+    Diagnostics diagnostics;
+
+    static TokenType keyword(char[] s, int start, int length) {
+        switch (length) {
+            case 2 -> {
+                if (s[start] == 'i' && s[start + 1] == 'f') return TokenType.IF;
+                if (s[start] == 'o' && s[start + 1] == 'r') return TokenType.OR;
+            }
+            case 3 -> {
+                if (s[start] == 'n' && matches(s, start, "nil")) return TokenType.NIL;
+                if (s[start] == 'a' && matches(s, start, "and")) return TokenType.AND;
+                if (s[start] == 'f' && matches(s, start, "for")) return TokenType.FOR;
+            }
+            case 4 -> {
+                switch (s[start]) {
+                    case 'e' -> {
+                        if (matches(s, start, "else")) return TokenType.ELSE;
+                    }
+                    case 't' -> {
+                        if (matches(s, start, "true")) return TokenType.TRUE;
+                    }
+                    case 'p' -> {
+                        if (matches(s, start, "pass")) return TokenType.PASS;
+                    }
+                }
+            }
+            case 5 -> {
+                if (s[start] == 'f' && matches(s, start, "false")) return TokenType.FALSE;
+                if (s[start] == 'p' && matches(s, start, "print")) return TokenType.PRINT;
+                if (s[start] == 'w' && matches(s, start, "while")) return TokenType.WHILE;
+            }
+            case 6 -> {
+                if (s[start] == 'r' && matches(s, start, "return")) return TokenType.RETURN;
+            }
+        }
+        return TokenType.IDENTIFIER;
+    }
+
+    static boolean matches(char[] s, int start, String keyword) {
+        for (int i = 1; i < keyword.length(); i++) {
+            if (s[start + i] != keyword.charAt(i)) return false;
+        }
+        return true;
     }
 
     Scanner(String source) {
-        this.source = source;
+        this.source = source.toCharArray();
+        this.limit = this.source.length;
+        this.reader = null;
         this.line = 0;
         this.current = 0;
         this.start = 0;
-        this.tokens = new ArrayList<>();
-        this.keywords = new HashMap<String, TokenType>();
-        this.buildKeywords();
+        this.lineStart = 0;
+        this.tokenLine = 0;
+        this.tokenLineStart = 0;
+        this.diagnostics = new Diagnostics();
+    }
+
+    Scanner(Reader reader) {
+        this.source = new char[BUFFER_SIZE];
+        this.limit = 0;
+        this.reader = reader;
+        this.line = 0;
+        this.current = 0;
+        this.start = 0;
+        this.lineStart = 0;
+        this.tokenLine = 0;
+        this.tokenLineStart = 0;
+        this.diagnostics = new Diagnostics();
+    }
+
+    static Scanner open(Path path) throws IOException {
+        return new Scanner(new MappedReader(path));
     }
 
     boolean isDigit(char c) {
@@ -45,28 +110,91 @@ class Scanner {
     }
 
     void addToken(TokenType tokentype) {
-        this.tokens.add(new Token(tokentype, "", "", this.line));
+        this.pending = tokentype;
+    }
+
+    int column() {
+        return this.start - this.tokenLineStart;
     }
 
-    void addToken(TokenType tokentype, Object literal) {
-        String lexeme = literal.toString();
-        if (tokentype == TokenType.STRING) {
-            lexeme = this.source.substring(this.start + 1, this.current - 1);
+    static Token token(char[] source, TokenType tokentype, int start, int end, int line, int column) {
+        switch (tokentype) {
+            case STRING -> {
+                String literal = new String(source, start, end - start);
+                return new Token(tokentype, literal.substring(1, literal.length() - 1), literal, line, column);
+            }
+            case NUMBER, FLOAT -> {
+                String literal = new String(source, start, end - start);
+                return new Token(tokentype, literal, literal, line, column);
+            }
+            case IDENTIFIER -> {
+                String name = Symbols.intern(source, start, end - start);
+                return new Token(tokentype, name, name, line, column);
+            }
+            default -> {
+                return new Token(tokentype, "", "", line, column);
+            }
         }
-        this.tokens.add(new Token(tokentype, lexeme, literal, this.line));
+    }
+
+    String substring(int from, int to) {
+        return new String(this.source, from, to - from);
+    }
+
+    // Makes sure at least n chars from current are buffered, sliding the
+    // window so that only the token being scanned is kept in memory.
+    boolean fill(int n) {
+        if (this.current + n <= this.limit) return true;
+        if (this.reader == null) return false;
+
+        if (this.start > 0) {
+            System.arraycopy(this.source, this.start, this.source, 0, this.limit - this.start);
+            this.limit -= this.start;
+            this.current -= this.start;
+            this.lineStart -= this.start;
+            this.tokenLineStart -= this.start;
+            this.start = 0;
+        }
+        while (this.current + n > this.limit) {
+            if (this.limit == this.source.length) {
+                this.source = Arrays.copyOf(this.source, this.source.length * 2);
+            }
+            int read;
+            try {
+                read = this.reader.read(this.source, this.limit, this.source.length - this.limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (read < 0) {
+                this.close();
+                return false;
+            }
+            this.limit += read;
+        }
+        return true;
+    }
+
+    void close() {
+        if (this.reader == null) return;
+        try {
+            this.reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.reader = null;
     }
 
     char advance() {
-        return isAtEnd() ? '\0' : this.source.charAt(this.current++);
+        return isAtEnd() ? '\0' : this.source[this.current++];
     }
 
     boolean isAtEnd() {
-        return this.current >= this.source.length();
+        return !this.fill(1);
     }
 
     boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (this.source.charAt(this.current) != expected) return false;
+        if (this.source[this.current] != expected) return false;
 
         this.current++;
         return true;
@@ -74,22 +202,64 @@ class Scanner {
 
     char peek() {
         if (isAtEnd()) return '\0';
-        return this.source.charAt(this.current);
+        return this.source[this.current];
     }
 
     char peekNext() {
-        if (isAtEnd()) return '\0';
-        return this.source.charAt(this.current + 1);
+        if (!this.fill(2)) return '\0';
+        return this.source[this.current + 1];
     }
 
     List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token t;
+        do {
+            t = this.nextToken();
+            tokens.add(t);
+        } while (t.type != TokenType.EOF);
+        return tokens;
+    }
+
+    Token nextToken() {
+        TokenType t = this.scanNext();
+        return token(this.source, t, this.start, this.current, this.tokenLine, this.column());
+    }
+
+    TokenType scanNext() {
         while (!isAtEnd()) {
             this.start = this.current;
+            this.tokenLine = this.line;
+            this.tokenLineStart = this.lineStart;
             scanToken();
+            if (this.pending != null) {
+                TokenType t = this.pending;
+                this.pending = null;
+                return t;
+            }
+        }
+        this.start = this.current;
+        this.tokenLine = this.line;
+        this.tokenLineStart = this.lineStart;
+        return TokenType.EOF;
+    }
+
+    TokenBuffer scanBuffer() {
+        if (this.reader != null) {
+            throw new IllegalStateException("scanBuffer needs an in-memory source");
         }
+        TokenBuffer buffer = new TokenBuffer(this.source);
+        buffer.diagnostics = this.diagnostics;
+        TokenType t;
+        do {
+            t = this.scanNext();
+            buffer.add(t, this.start, this.current - this.start, this.tokenLine, this.column());
+        } while (t != TokenType.EOF);
+        return buffer;
+    }
 
-        tokens.add(new Token(TokenType.EOF, "", "", this.line));
-        return this.tokens;
+    // Reported at the start of the current token.
+    void error(String text, String message) {
+        this.diagnostics.report(this.tokenLine + 1, this.column() + 1, text, message);
     }
 
     void scanToken() {
@@ -97,6 +267,7 @@ class Scanner {
         switch (c) {
             case '\n':
                 this.line += 1;
+                this.lineStart = this.current;
                 break;
             case '+':
                 this.addToken(TokenType.PLUS);
@@ -113,6 +284,12 @@ class Scanner {
             case ')':
                 this.addToken(TokenType.RIGHT_PAREN);
                 break;
+            case '[':
+                this.addToken(TokenType.LEFT_BRACKET);
+                break;
+            case ']':
+                this.addToken(TokenType.RIGHT_BRACKET);
+                break;
             case '{':
                 this.addToken(TokenType.LEFT_BRACE);
                 break;
@@ -153,16 +330,16 @@ class Scanner {
                 while (peek() != '"' && !isAtEnd()) {
                     if (peek() == '\n') {
                         this.line++;
+                        this.lineStart = this.current + 1;
                     }
                     this.advance();
                 }
                 if (isAtEnd()) {
-                    System.out.println("Error ");
+                    this.diagnostics.report(this.tokenLine + 1, this.column() + 1, "\"", "Unterminated string");
                     return;
                 }
                 this.advance();
-                String literal = this.source.substring(this.start, this.current);
-                this.addToken(TokenType.STRING, literal);
+                this.addToken(TokenType.STRING);
                 break;
             case ' ', '\t', '\r':
                 break;
@@ -181,21 +358,14 @@ class Scanner {
                         this.advance();
                     }
 
-//                    this.addToken(!isFloat ? TokenType.NUMBER : TokenType.FLOAT, this.source.substring(this.start, this.current));
-                    this.addToken(TokenType.NUMBER, this.source.substring(this.start, this.current));
+                    this.addToken(!isFloat ? TokenType.NUMBER : TokenType.FLOAT);
                 } else if (isAlpha(c)) {
                     while (isAlpha(peek())) {
                         this.advance();
                     }
-                    String t = this.source.substring(this.start, this.current);
-                    TokenType tokentype = this.keywords.get(t);
-                    if (tokentype != null) {
-                        this.addToken(tokentype);
-                    } else {
-                        this.addToken(TokenType.IDENTIFIER, t);
-                    }
+                    this.addToken(keyword(this.source, this.start, this.current - this.start));
                 } else {
-                    System.out.printf("Unexpected char at line %d\n", this.line);
+                    this.error(String.valueOf(c), "Unexpected character");
                 }
         }
 
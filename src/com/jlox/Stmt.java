@@ -1,5 +1,6 @@
 package com.jlox;
 
+import java.lang.invoke.MethodHandle;
 import java.util.List;
 
 abstract class Stmt {
@@ -8,6 +9,7 @@ abstract class Stmt {
         R visitPrintStmt(PrintStmt stmt);
         R visitBlock(Block stmt);
         R visitIfStmt(IfStmt stmt);
+        R visitWhileStmt(WhileStmt stmt);
     }
 
     abstract <R> R accept(Stmt.Visitor<R> visitor);
@@ -68,4 +70,28 @@ abstract class Stmt {
             return visitor.visitIfStmt(this);
         }
     }
+
+    static class WhileStmt extends Stmt {
+        Expr condition;
+        Stmt body;
+
+        // Tiering state, shared by every Lox running this tree; see
+        // Lox.visitWhileStmt. The counters race on purpose: a lost update only
+        // delays tier-up. tiered and compiled are set once, under the
+        // statement's lock.
+        int entries;
+        int backEdges;
+        volatile boolean tiered;
+        volatile MethodHandle compiled;
+
+        WhileStmt(Expr condition, Stmt body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        <R> R accept(Stmt.Visitor<R> visitor) {
+            return visitor.visitWhileStmt(this);
+        }
+    }
 }
\ No newline at end of file
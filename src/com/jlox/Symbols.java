@@ -0,0 +1,124 @@
+package com.jlox;
+
+import java.lang.ref.WeakReference;
+
+// Process-wide intern table for identifiers. Each distinct name that is
+// still in use exists as one String, so later stages can compare names by
+// identity. Lookups read the table without locking and hash straight from
+// the scanner's char buffer, so a known identifier costs no allocation;
+// only inserts take the lock.
+//
+// Entries are weak: a name lives only as long as some token, tree or
+// Program holds it, so services that load many generated scripts do not
+// grow the table without bound. Cleared entries are reused by inserts and
+// dropped when the table is rebuilt.
+final class Symbols {
+    static final int MIN_CAPACITY = 1024;
+
+    static volatile Entry[] table = new Entry[MIN_CAPACITY];
+    // Slots in use, including cleared entries.
+    static int used = 0;
+
+    static final class Entry extends WeakReference<String> {
+        final int hash;
+
+        Entry(String name, int hash) {
+            super(name);
+            this.hash = hash;
+        }
+    }
+
+    private Symbols() {
+    }
+
+    static String intern(String name) {
+        char[] chars = name.toCharArray();
+        return intern(chars, 0, chars.length);
+    }
+
+    static String intern(char[] s, int start, int length) {
+        int hash = hash(s, start, length);
+        String found = find(table, s, start, length, hash);
+        if (found != null) return found;
+        return insert(s, start, length, hash);
+    }
+
+    static int hash(char[] s, int start, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + s[start + i];
+        }
+        return h;
+    }
+
+    static String find(Entry[] t, char[] s, int start, int length, int hash) {
+        int mask = t.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            Entry e = t[i];
+            if (e == null) return null;
+            if (e.hash != hash) continue;
+            String candidate = e.get();
+            if (candidate != null && equals(candidate, s, start, length)) return candidate;
+        }
+    }
+
+    static boolean equals(String candidate, char[] s, int start, int length) {
+        if (candidate.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != s[start + i]) return false;
+        }
+        return true;
+    }
+
+    static synchronized String insert(char[] s, int start, int length, int hash) {
+        String found = find(table, s, start, length, hash);
+        if (found != null) return found;
+
+        Entry[] t = table;
+        if ((used + 1) * 2 > t.length) {
+            t = rebuild(t);
+        }
+        String name = new String(s, start, length);
+        int mask = t.length - 1;
+        int i = spread(hash) & mask;
+        // The name is not in the table, so the first cleared slot on its
+        // chain can take it.
+        while (t[i] != null && t[i].get() != null) {
+            i = (i + 1) & mask;
+        }
+        if (t[i] == null) used++;
+        t[i] = new Entry(name, hash);
+        table = t;
+        return name;
+    }
+
+    // Copies the live entries into a table sized for them, which may be the
+    // same size or smaller than the old one when many were cleared.
+    static Entry[] rebuild(Entry[] old) {
+        int live = 0;
+        for (Entry e : old) {
+            if (e != null && e.get() != null) live++;
+        }
+        int capacity = MIN_CAPACITY;
+        while ((live + 1) * 4 > capacity) {
+            capacity *= 2;
+        }
+        Entry[] t = new Entry[capacity];
+        int mask = t.length - 1;
+        used = 0;
+        for (Entry e : old) {
+            if (e == null || e.get() == null) continue;
+            int i = spread(e.hash) & mask;
+            while (t[i] != null) {
+                i = (i + 1) & mask;
+            }
+            t[i] = e;
+            used++;
+        }
+        return t;
+    }
+
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -4,13 +4,22 @@ class Token {
     final TokenType type;
     final String lexeme;
     final Object literal;
-    final int line;
+    // Shifted in place by IncrementalParser when an edit above moves a
+    // reused subtree.
+    int line;
+    // 0-based, or -1 for tokens that were not scanned from source text.
+    final int column;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, -1);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int column) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.column = column;
     }
 
     public String toString() {
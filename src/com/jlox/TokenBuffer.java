@@ -0,0 +1,95 @@
+package com.jlox;
+
+import java.util.Arrays;
+
+// Struct-of-arrays token store: a token is an index into parallel int arrays,
+// and a Token object is only built when the parser asks for one.
+class TokenBuffer implements TokenStream {
+    static final TokenType[] TYPES = TokenType.values();
+
+    final char[] source;
+    int[] types;
+    int[] starts;
+    int[] lengths;
+    int[] lines;
+    int[] columns;
+    int count;
+    Diagnostics diagnostics;
+    int current;
+
+    TokenBuffer(char[] source) {
+        int capacity = Math.max(16, source.length / 8);
+        this.source = source;
+        this.types = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.columns = new int[capacity];
+        this.count = 0;
+        this.current = 0;
+    }
+
+    void add(TokenType type, int start, int length, int line, int column) {
+        if (this.count == this.types.length) {
+            int capacity = this.count * 2;
+            this.types = Arrays.copyOf(this.types, capacity);
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+            this.lines = Arrays.copyOf(this.lines, capacity);
+            this.columns = Arrays.copyOf(this.columns, capacity);
+        }
+        this.types[this.count] = type.ordinal();
+        this.starts[this.count] = start;
+        this.lengths[this.count] = length;
+        this.lines[this.count] = line;
+        this.columns[this.count] = column;
+        this.count++;
+    }
+
+    int size() {
+        return this.count;
+    }
+
+    TokenType type(int i) {
+        return TYPES[this.types[i]];
+    }
+
+    int line(int i) {
+        return this.lines[i];
+    }
+
+    String lexeme(int i) {
+        return new String(this.source, this.starts[i], this.lengths[i]);
+    }
+
+    Token get(int i) {
+        return Scanner.token(this.source, this.type(i), this.starts[i], this.starts[i] + this.lengths[i], this.lines[i], this.columns[i]);
+    }
+
+    @Override
+    public TokenType peekType() {
+        if (this.current >= this.count) return TokenType.EOF;
+        return TYPES[this.types[this.current]];
+    }
+
+    @Override
+    public Token peekToken() {
+        if (this.current >= this.count) return null;
+        return this.get(this.current);
+    }
+
+    @Override
+    public Token previous() {
+        return this.get(this.current - 1);
+    }
+
+    @Override
+    public void advance() {
+        this.current++;
+    }
+
+    @Override
+    public Diagnostics diagnostics() {
+        return this.diagnostics;
+    }
+}
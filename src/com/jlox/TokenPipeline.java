@@ -0,0 +1,170 @@
+package com.jlox;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the Scanner on its own thread and hands batches of tokens to the
+// parser through a bounded single-producer/single-consumer ring. Either side
+// spins briefly and then parks when the ring is full or empty. The producer
+// closes the scanner when it stops, which is at EOF, on a scanner failure,
+// or when the consumer calls close().
+class TokenPipeline implements TokenStream {
+    static final int BATCH_SIZE = 512;
+    static final int RING_SIZE = 64;
+    static final int SPIN_LIMIT = 128;
+
+    final Token[][] ring;
+    final int mask;
+    final AtomicLong head;
+    final AtomicLong tail;
+    final Thread producer;
+    final Diagnostics diagnostics;
+    volatile Thread consumer;
+    volatile Throwable failure;
+    volatile boolean producerParked;
+    volatile boolean consumerParked;
+    volatile boolean closed;
+
+    Token[] batch;
+    int index;
+    Token previous;
+
+    TokenPipeline(Scanner scanner) {
+        this(scanner, RING_SIZE);
+    }
+
+    TokenPipeline(Scanner scanner, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new Token[size][];
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.consumer = Thread.currentThread();
+        this.diagnostics = scanner.diagnostics;
+        this.producer = new Thread(() -> this.produce(scanner), "jlox-scanner");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    void produce(Scanner scanner) {
+        try {
+            Token[] out = new Token[BATCH_SIZE];
+            int n = 0;
+            while (true) {
+                Token t = scanner.nextToken();
+                out[n++] = t;
+                if (t.type == TokenType.EOF) {
+                    this.publish(out);
+                    return;
+                }
+                if (n == BATCH_SIZE) {
+                    if (!this.publish(out)) return;
+                    out = new Token[BATCH_SIZE];
+                    n = 0;
+                }
+            }
+        } catch (Throwable e) {
+            this.failure = e;
+            LockSupport.unpark(this.consumer);
+        } finally {
+            try {
+                scanner.close();
+            } catch (UncheckedIOException e) {
+                if (this.failure == null) this.failure = e;
+            }
+        }
+    }
+
+    // False if the consumer closed the pipeline while we waited for room.
+    boolean publish(Token[] out) {
+        long t = this.tail.get();
+        int spins = 0;
+        while (t - this.head.get() == this.ring.length) {
+            if (this.closed) return false;
+            if (++spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else {
+                this.producerParked = true;
+                if (t - this.head.get() == this.ring.length) LockSupport.parkNanos(this, 50_000);
+                this.producerParked = false;
+            }
+        }
+        this.ring[(int) (t & this.mask)] = out;
+        this.tail.set(t + 1);
+        if (this.consumerParked) LockSupport.unpark(this.consumer);
+        return true;
+    }
+
+    // Stops the producer and waits for it to close the scanner.
+    @Override
+    public void close() {
+        this.closed = true;
+        LockSupport.unpark(this.producer);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.producer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    Token[] take() {
+        long h = this.head.get();
+        int spins = 0;
+        while (h == this.tail.get()) {
+            if (this.failure != null) {
+                throw new RuntimeException("Scanner failed", this.failure);
+            }
+            if (++spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else {
+                this.consumerParked = true;
+                if (h == this.tail.get()) LockSupport.parkNanos(this, 50_000);
+                this.consumerParked = false;
+            }
+        }
+        int slot = (int) (h & this.mask);
+        Token[] out = this.ring[slot];
+        this.ring[slot] = null;
+        this.head.set(h + 1);
+        if (this.producerParked) LockSupport.unpark(this.producer);
+        return out;
+    }
+
+    @Override
+    public TokenType peekType() {
+        return this.peekToken().type;
+    }
+
+    @Override
+    public Token peekToken() {
+        if (this.batch == null || this.index == this.batch.length) {
+            this.batch = this.take();
+            this.index = 0;
+        }
+        return this.batch[this.index];
+    }
+
+    @Override
+    public Token previous() {
+        return this.previous;
+    }
+
+    @Override
+    public void advance() {
+        this.previous = this.peekToken();
+        if (this.previous.type != TokenType.EOF) {
+            this.index++;
+        }
+    }
+
+    @Override
+    public Diagnostics diagnostics() {
+        return this.diagnostics;
+    }
+}
@@ -0,0 +1,107 @@
+package com.jlox;
+
+import java.util.List;
+
+interface TokenStream extends AutoCloseable {
+    TokenType peekType();
+
+    Token peekToken();
+
+    Token previous();
+
+    void advance();
+
+    // Errors found while producing the tokens, if the source keeps any.
+    default Diagnostics diagnostics() {
+        return null;
+    }
+
+    // Releases the source early, for a parser that stops before EOF.
+    @Override
+    default void close() {
+    }
+
+    static TokenStream of(List<Token> tokens) {
+        return new TokenList(tokens);
+    }
+
+    static TokenStream of(Scanner scanner) {
+        return new Streaming(scanner);
+    }
+
+    class TokenList implements TokenStream {
+        final List<Token> tokens;
+        int current;
+
+        TokenList(List<Token> tokens) {
+            this.tokens = tokens;
+            this.current = 0;
+        }
+
+        @Override
+        public TokenType peekType() {
+            Token t = this.peekToken();
+            return t == null ? TokenType.EOF : t.type;
+        }
+
+        @Override
+        public Token peekToken() {
+            if (this.current >= this.tokens.size()) return null;
+            return this.tokens.get(this.current);
+        }
+
+        @Override
+        public Token previous() {
+            return this.tokens.get(this.current - 1);
+        }
+
+        @Override
+        public void advance() {
+            this.current++;
+        }
+    }
+
+    class Streaming implements TokenStream {
+        final Scanner scanner;
+        Token lookahead;
+        Token previous;
+
+        Streaming(Scanner scanner) {
+            this.scanner = scanner;
+        }
+
+        @Override
+        public TokenType peekType() {
+            return this.peekToken().type;
+        }
+
+        @Override
+        public Token peekToken() {
+            if (this.lookahead == null) {
+                this.lookahead = this.scanner.nextToken();
+            }
+            return this.lookahead;
+        }
+
+        @Override
+        public Token previous() {
+            return this.previous;
+        }
+
+        @Override
+        public void advance() {
+            this.previous = this.peekToken();
+            this.lookahead = null;
+        }
+
+        @Override
+        public Diagnostics diagnostics() {
+            return this.scanner.diagnostics;
+        }
+
+        @Override
+        public void close() {
+            this.scanner.close();
+        }
+    }
+}
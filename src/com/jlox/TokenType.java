@@ -46,4 +46,11 @@ enum TokenType {
     BITWISE_AND,
 
     NIL,
+
+    // .loxc files store the codes in Loxc.TOKENS, not ordinals, so new
+    // types can go anywhere as long as they are also added there.
+    WHILE,
+    FOR,
+    LEFT_BRACKET,
+    RIGHT_BRACKET,
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.jlox;
+
+abstract class UnaryNode {
+    // What each node is, for dispatch(). Uninitialized and Generic are OTHER.
+    static final int OTHER = 0;
+    static final int LONG_NEGATE = 1;
+    static final int DOUBLE_NEGATE = 2;
+    static final int BOOLEAN_NOT = 3;
+
+    static final UnaryNode UNINITIALIZED = new Uninitialized();
+    static final UnaryNode GENERIC = new Generic();
+
+    final int kind;
+
+    UnaryNode(int kind) {
+        this.kind = kind;
+    }
+
+    abstract Object execute(Expr.Unary expr, Object r);
+
+    // One call site per specialized class; see BinaryNode.dispatch.
+    static Object dispatch(UnaryNode node, Expr.Unary expr, Object r) {
+        return switch (node.kind) {
+            case LONG_NEGATE -> ((LongNegate) node).execute(expr, r);
+            case DOUBLE_NEGATE -> ((DoubleNegate) node).execute(expr, r);
+            case BOOLEAN_NOT -> ((BooleanNot) node).execute(expr, r);
+            default -> node.execute(expr, r);
+        };
+    }
+
+    static Object generalize(Expr.Unary expr, Object r) {
+        expr.node = GENERIC;
+        return Lox.unary(expr.operator.type, r);
+    }
+
+    static UnaryNode specialize(TokenType op, Object r) {
+        if (op == TokenType.MINUS && r instanceof Long) return new LongNegate();
+        if (op == TokenType.MINUS && r instanceof Double) return new DoubleNegate();
+        if (op == TokenType.NOT && r instanceof Boolean) return new BooleanNot();
+        return GENERIC;
+    }
+
+    static final class Uninitialized extends UnaryNode {
+        Uninitialized() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Expr.Unary expr, Object r) {
+            UnaryNode node = specialize(expr.operator.type, r);
+            expr.node = node;
+            return node.execute(expr, r);
+        }
+    }
+
+    static final class Generic extends UnaryNode {
+        Generic() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Expr.Unary expr, Object r) {
+            return Lox.unary(expr.operator.type, r);
+        }
+    }
+
+    static final class LongNegate extends UnaryNode {
+        LongNegate() {
+            super(LONG_NEGATE);
+        }
+
+        @Override
+        Object execute(Expr.Unary expr, Object r) {
+            if (r instanceof Long a) return Numbers.negate(a);
+            return generalize(expr, r);
+        }
+    }
+
+    static final class DoubleNegate extends UnaryNode {
+        DoubleNegate() {
+            super(DOUBLE_NEGATE);
+        }
+
+        @Override
+        Object execute(Expr.Unary expr, Object r) {
+            if (r instanceof Double a) return -a;
+            return generalize(expr, r);
+        }
+    }
+
+    static final class BooleanNot extends UnaryNode {
+        BooleanNot() {
+            super(BOOLEAN_NOT);
+        }
+
+        @Override
+        Object execute(Expr.Unary expr, Object r) {
+            if (r instanceof Boolean a) return !a;
+            return generalize(expr, r);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.jlox;
+
+import java.util.Arrays;
+
+class VM {
+    Object[] slots;
+    Object[] stack;
+    int sp;
+    OutputSink out;
+    Budget.Meter meter;
+
+    VM(Object[] slots, OutputSink out) {
+        this.slots = slots;
+        this.out = out;
+        this.stack = new Object[256];
+        this.sp = 0;
+    }
+
+    void push(Object value) {
+        if (this.sp == this.stack.length) {
+            this.stack = Arrays.copyOf(this.stack, this.sp * 2);
+        }
+        this.stack[this.sp++] = value;
+    }
+
+    Object pop() {
+        Object value = this.stack[--this.sp];
+        this.stack[this.sp] = null;
+        return value;
+    }
+
+    void run(Chunk chunk) {
+        byte[] code = chunk.code;
+        Object[] constants = chunk.constantPool();
+        int ip = 0;
+
+        try {
+            while (true) {
+                byte op = code[ip++];
+                switch (op) {
+                    case OpCode.CONSTANT -> {
+                        this.push(constants[readShort(code, ip)]);
+                        ip += 2;
+                    }
+                    case OpCode.NIL -> this.push(null);
+                    case OpCode.TRUE -> this.push(true);
+                    case OpCode.FALSE -> this.push(false);
+                    case OpCode.POP -> this.pop();
+                    case OpCode.GET_GLOBAL -> {
+                        this.push(this.slots[readShort(code, ip)]);
+                        ip += 2;
+                    }
+                    case OpCode.SET_GLOBAL -> {
+                        this.slots[readShort(code, ip)] = this.stack[this.sp - 1];
+                        ip += 2;
+                    }
+                    case OpCode.ADD -> {
+                        Object r = this.pop();
+                        Object l = this.pop();
+                        if (l instanceof Long a && r instanceof Long b) {
+                            this.push(Numbers.add(a, b));
+                        } else if (l instanceof Double && r instanceof Double) {
+                            this.push((double) l + (double) r);
+                        } else {
+                            this.push(Lox.binary(TokenType.PLUS, l, r));
+                        }
+                    }
+                    case OpCode.SUBTRACT -> {
+                        Object r = this.pop();
+                        Object l = this.pop();
+                        if (l instanceof Long a && r instanceof Long b) {
+                            this.push(Numbers.subtract(a, b));
+                        } else if (l instanceof Double && r instanceof Double) {
+                            this.push((double) l - (double) r);
+                        } else {
+                            this.push(Lox.binary(TokenType.MINUS, l, r));
+                        }
+                    }
+                    case OpCode.MULTIPLY -> {
+                        Object r = this.pop();
+                        Object l = this.pop();
+                        if (l instanceof Long a && r instanceof Long b) {
+                            this.push(Numbers.multiply(a, b));
+                        } else if (l instanceof Double && r instanceof Double) {
+                            this.push((double) l * (double) r);
+                        } else {
+                            this.push(Lox.binary(TokenType.MULTIPLY, l, r));
+                        }
+                    }
+                    case OpCode.DIVIDE -> {
+                        Object r = this.pop();
+                        Object l = this.pop();
+                        if (l instanceof Long a && r instanceof Long b) {
+                            this.push(Numbers.divide(a, b));
+                        } else if (l instanceof Double && r instanceof Double) {
+                            this.push((double) l / (double) r);
+                        } else {
+                            this.push(Lox.binary(TokenType.DIVIDE, l, r));
+                        }
+                    }
+                    case OpCode.EQUAL -> {
+                        Object r = this.pop();
+                        this.push(Lox.equal(this.pop(), r));
+                    }
+                    case OpCode.NOT_EQUAL -> {
+                        Object r = this.pop();
+                        this.push(!Lox.equal(this.pop(), r));
+                    }
+                    case OpCode.LESS -> {
+                        Object r = this.pop();
+                        Object l = this.pop();
+                        if (l instanceof Long a && r instanceof Long b) {
+                            this.push(a < b);
+                        } else {
+                            this.push(Lox.binary(TokenType.LESS_THAN, l, r));
+                        }
+                    }
+                    case OpCode.GREATER -> {
+                        Object r = this.pop();
+                        this.push(Lox.binary(TokenType.GREATER_THAN, this.pop(), r));
+                    }
+                    case OpCode.LESS_EQUAL -> {
+                        Object r = this.pop();
+                        this.push(Lox.binary(TokenType.LESS_THAN_OR_EQUAL, this.pop(), r));
+                    }
+                    case OpCode.GREATER_EQUAL -> {
+                        Object r = this.pop();
+                        this.push(Lox.binary(TokenType.GREATER_THAN_OR_EQUAL, this.pop(), r));
+                    }
+                    case OpCode.NOT -> this.push(Lox.unary(TokenType.NOT, this.pop()));
+                    case OpCode.NEGATE -> this.push(Lox.unary(TokenType.MINUS, this.pop()));
+                    case OpCode.AND -> {
+                        Object r = this.pop();
+                        this.push(Lox.logical(TokenType.AND, this.pop(), r));
+                    }
+                    case OpCode.OR -> {
+                        Object r = this.pop();
+                        this.push(Lox.logical(TokenType.OR, this.pop(), r));
+                    }
+                    case OpCode.PRINT -> this.out.println(this.pop());
+                    case OpCode.JUMP -> ip += 2 + readShort(code, ip);
+                    case OpCode.LOOP -> ip += 2 - readShort(code, ip);
+                    case OpCode.TICK -> this.meter.tick();
+                    case OpCode.CALL -> {
+                        this.push(this.call((NativeFunction) constants[readShort(code, ip)]));
+                        ip += 2;
+                    }
+                    case OpCode.GET_INDEX -> {
+                        Object index = this.pop();
+                        this.push(NumberArray.get(this.pop(), index));
+                    }
+                    case OpCode.SET_INDEX -> {
+                        Object value = this.pop();
+                        Object index = this.pop();
+                        this.push(NumberArray.set(this.pop(), index, value));
+                    }
+                    case OpCode.JUMP_IF_FALSE -> {
+                        if (!Lox.isTruth(this.pop())) ip += 2 + readShort(code, ip);
+                        else ip += 2;
+                    }
+                    case OpCode.RETURN -> {
+                        return;
+                    }
+                    default -> throw new RuntimeException("Unknown opcode " + op);
+                }
+            }
+        } catch (BudgetExceededException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Line " + (chunk.lines[ip - 1] + 1) + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Pops f's arguments, last one first.
+    Object call(NativeFunction f) {
+        switch (f.arity) {
+            case 0 -> {
+                return f.call();
+            }
+            case 1 -> {
+                return f.call(this.pop());
+            }
+            case 2 -> {
+                Object b = this.pop();
+                return f.call(this.pop(), b);
+            }
+            case 3 -> {
+                Object c = this.pop();
+                Object b = this.pop();
+                return f.call(this.pop(), b, c);
+            }
+            case 4 -> {
+                Object d = this.pop();
+                Object c = this.pop();
+                Object b = this.pop();
+                return f.call(this.pop(), b, c, d);
+            }
+            default -> {
+                Object[] arguments = new Object[f.arity];
+                for (int i = f.arity - 1; i >= 0; i--) {
+                    arguments[i] = this.pop();
+                }
+                return f.callAll(arguments);
+            }
+        }
+    }
+
+    static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+}
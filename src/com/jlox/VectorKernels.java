@@ -0,0 +1,136 @@
+package com.jlox;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// NumberArray's bulk operations written against jdk.incubator.vector, at
+// the widest vector shape the CPU has, with a scalar loop for the tail.
+// Only NumberArray refers to this class, and only when the module was
+// resolved at startup (--add-modules jdk.incubator.vector), so without it
+// the class is never loaded.
+//
+// Sums add lanewise into one vector and then reduce its lanes in order,
+// not with reduceLanes, whose order is unspecified: the same array on the
+// same machine always sums to the same double.
+final class VectorKernels {
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    static void add(double[] a, double[] b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = a[i] + b[i];
+        }
+    }
+
+    static void add(double[] a, double b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).add(b).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = a[i] + b;
+        }
+    }
+
+    static void multiply(double[] a, double[] b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = a[i] * b[i];
+        }
+    }
+
+    static void multiply(double[] a, double b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(b).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = a[i] * b;
+        }
+    }
+
+    // MIN and MAX follow Math.min and Math.max for NaN and signed zeros.
+    static void min(double[] a, double[] b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.MIN, DoubleVector.fromArray(SPECIES, b, i)).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = Math.min(a[i], b[i]);
+        }
+    }
+
+    static void min(double[] a, double b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.MIN, b).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = Math.min(a[i], b);
+        }
+    }
+
+    static void max(double[] a, double[] b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.MAX, DoubleVector.fromArray(SPECIES, b, i)).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = Math.max(a[i], b[i]);
+        }
+    }
+
+    static void max(double[] a, double b, double[] result) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.MAX, b).intoArray(result, i);
+        }
+        for (; i < a.length; i++) {
+            result[i] = Math.max(a[i], b);
+        }
+    }
+
+    static double sum(double[] a) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            sums = sums.add(DoubleVector.fromArray(SPECIES, a, i));
+        }
+        double s = reduce(sums);
+        for (; i < a.length; i++) {
+            s += a[i];
+        }
+        return s;
+    }
+
+    static double dot(double[] a, double[] b) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int upper = SPECIES.loopBound(a.length); i < upper; i += SPECIES.length()) {
+            sums = DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).add(sums);
+        }
+        double s = reduce(sums);
+        for (; i < a.length; i++) {
+            s += a[i] * b[i];
+        }
+        return s;
+    }
+
+    static double reduce(DoubleVector sums) {
+        double s = 0;
+        for (int lane = 0; lane < SPECIES.length(); lane++) {
+            s += sums.lane(lane);
+        }
+        return s;
+    }
+}
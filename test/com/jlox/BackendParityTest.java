@@ -0,0 +1,220 @@
+package com.jlox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+// Runs the same scripts on every backend and through a .loxc round trip,
+// and expects the same output and the same error from each. The VM
+// prefixes errors with their line, which is stripped before comparing.
+class BackendParityTest {
+    record Script(String name, String source, String expected) {
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+
+    static Stream<Script> scripts() {
+        return Stream.of(
+                new Script("overflow", """
+                        a = 9223372036854775807;
+                        print(a + 1);
+                        print(a * 2);
+                        b = 0 - a - 1;
+                        print(b - 1);
+                        print(0 - b);
+                        print(a - 1);
+                        c = 3000000000;
+                        print(c * c * c);
+                        print(7 / 2);
+                        print(-7 / 2);
+                        """, """
+                        9.223372036854776E18
+                        1.8446744073709552E19
+                        -9.223372036854776E18
+                        9.223372036854776E18
+                        9223372036854775806
+                        2.7E28
+                        3.5
+                        -3.5
+                        """),
+                // Both loops run past Lox.HOT_LOOP, so the tree walker tiers
+                // them up mid-loop.
+                new Script("hot loops", """
+                        s = 0;
+                        f = 0.5;
+                        for (i = 0; i < 5000; i = i + 1) {
+                            s = s + i;
+                            if (i > 2500) { f = f + 0.25; }
+                        }
+                        print(s);
+                        print(f);
+                        n = 0;
+                        while (n < 3000) {
+                            n = n + 7;
+                            if (n > 2990) { s = "done"; }
+                        }
+                        print(n);
+                        print(s);
+                        """, """
+                        12497500
+                        625.25
+                        3003
+                        done
+                        """),
+                new Script("ropes", """
+                        s = "";
+                        for (i = 0; i < 1500; i = i + 1) {
+                            s = s + "ab";
+                        }
+                        print(len(s));
+                        print(substr(s, 0, 6));
+                        t = s + s;
+                        print(len(t));
+                        print(upper("mixed Case") + lower("MIXED"));
+                        print("n=" + str(42) + ";" + str(1.5));
+                        """, """
+                        3000
+                        ababab
+                        6000
+                        MIXED CASEmixed
+                        n=42;1.5
+                        """),
+                new Script("arrays", """
+                        a = array(1200);
+                        for (i = 0; i < len(a); i = i + 1) { a[i] = i / 4; }
+                        b = add(mul(a, 2), 1);
+                        print(sum(a));
+                        print(dot(a, b));
+                        print(a[1199]);
+                        print(b[3] = 9);
+                        print(min(a, 100)[1199]);
+                        print(max(3, a)[0]);
+                        print(len(b));
+                        """, """
+                        179850.0
+                        7.2089875E7
+                        299.75
+                        9.0
+                        100.0
+                        3.0
+                        1200
+                        """),
+                new Script("natives", """
+                        print(sqrt(16));
+                        print(pow(2, 10));
+                        print(floor(2.7));
+                        print(ceil(2.1));
+                        print(abs(0 - 5));
+                        print(min(3, 2.5));
+                        print(max(3, 2));
+                        print(repeat("xy", 3));
+                        print(indexOf("hello", "ll"));
+                        print(contains("hello", "z"));
+                        print(trim("  pad  "));
+                        print(num("12") + num("0.5"));
+                        """, """
+                        4.0
+                        1024.0
+                        2
+                        3
+                        5
+                        2.5
+                        3
+                        xyxyxy
+                        2
+                        false
+                        pad
+                        12.5
+                        """),
+                new Script("type error", """
+                        x = 1;
+                        print(x);
+                        y = "a" - 1;
+                        print("unreachable");
+                        """, """
+                        1
+                        error: Cannot evaluate types class java.lang.String and class java.lang.Long
+                        """),
+                new Script("index error in a hot loop", """
+                        a = array(3);
+                        a[2] = 5;
+                        print(a[2]);
+                        for (i = 0; i < 2000; i = i + 1) { a[0] = i; }
+                        print(a[0]);
+                        print(a[3]);
+                        """, """
+                        5.0
+                        1999.0
+                        error: Index 3 out of bounds for length 3
+                        """));
+    }
+
+    static List<Stmt> parse(String source) {
+        return new Interpreter(new Scanner(source).scanBuffer()).Parse();
+    }
+
+    // Output so far, then the error if the script failed.
+    static String run(Lox.Backend backend, List<Stmt> stmts) {
+        Lox lox = new Lox();
+        lox.backend = backend;
+        OutputSink.Capture output = new OutputSink.Capture();
+        lox.out = output;
+        String error = "";
+        try {
+            lox.execute(lox.prepare(stmts));
+        } catch (RuntimeException e) {
+            error = "error: " + e.getMessage().replaceFirst("^Line \\d+: ", "") + "\n";
+        }
+        return output.contents().replace(System.lineSeparator(), "\n") + error;
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("scripts")
+    void everyBackendAgrees(Script script) {
+        for (Lox.Backend backend : Lox.Backend.values()) {
+            assertEquals(script.expected(), run(backend, parse(script.source())), backend.name());
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("scripts")
+    void loxcRoundTrip(Script script, @TempDir Path dir) throws IOException {
+        Path file = dir.resolve("script.loxc");
+        Loxc.write(new Optimizer().optimize(parse(script.source())), file);
+        for (Lox.Backend backend : Lox.Backend.values()) {
+            assertEquals(script.expected(), run(backend, Loxc.read(file)), backend.name());
+        }
+    }
+
+    // Global slots are 16-bit VM operands. Past 65536 globals the VM must
+    // refuse the program rather than alias slot 65536 onto slot 0.
+    @Test
+    void vmRejectsMoreGlobalsThanItsSlotsAddress() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i <= 0x10000; i++) {
+            source.append(name(i)).append(" = 1;\n");
+        }
+        source.append(name(0)).append(" = 7; print(").append(name(0x10000)).append(");\n");
+        List<Stmt> stmts = parse(source.toString());
+        assertEquals("1\n", run(Lox.Backend.AST, stmts));
+        assertEquals("error: Too many global variables in one chunk\n", run(Lox.Backend.VM, stmts));
+    }
+
+    // Identifiers are letters only: va, vb, ..., vz, vaa, ...
+    static String name(int i) {
+        StringBuilder name = new StringBuilder();
+        for (i++; i > 0; i = (i - 1) / 26) {
+            name.insert(0, (char) ('a' + (i - 1) % 26));
+        }
+        return "v" + name;
+    }
+}
@@ -0,0 +1,114 @@
+package com.jlox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// Budgets abort runs with the limit that was exceeded, on every backend.
+class BudgetTest {
+    static final String APPEND_LOOP = """
+            s = "";
+            for (i = 0; i < 10000; i = i + 1) { s = s + "ab"; }
+            print(s);
+            """;
+    static final long APPENDED_BYTES = 2 * 20000;
+
+    static String run(Lox.Backend backend, Budget budget, String source) {
+        Lox lox = new Lox();
+        lox.backend = backend;
+        OutputSink.Capture output = new OutputSink.Capture();
+        lox.out = output;
+        lox.meter = budget.start();
+        lox.run(source);
+        return output.contents();
+    }
+
+    static Budget.Limit exceeded(Lox.Backend backend, Budget budget, String source) {
+        return assertThrows(BudgetExceededException.class, () -> run(backend, budget, source)).limit();
+    }
+
+    // Appends are charged for what they add, not for the whole string each
+    // time, so the loop fits a small multiple of its final string: the
+    // appends, the flatten for print and the captured line.
+    @ParameterizedTest
+    @EnumSource(Lox.Backend.class)
+    void appendLoopFitsABudgetSizedToItsResult(Lox.Backend backend) {
+        String output = run(backend, Budget.UNLIMITED.withMaxAllocation(4 * APPENDED_BYTES), APPEND_LOOP);
+        assertEquals(20000, output.strip().length());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Lox.Backend.class)
+    void appendLoopOverTheAllocationLimitAborts(Lox.Backend backend) {
+        assertEquals(Budget.Limit.ALLOCATION, exceeded(backend, Budget.UNLIMITED.withMaxAllocation(APPENDED_BYTES / 2), APPEND_LOOP));
+    }
+
+    // Captured output is held in memory, so it counts against the budget.
+    @Test
+    void capturedOutputIsCharged() {
+        Program program = Program.compile("""
+                s = repeat("x", 100000);
+                for (i = 0; i < 200; i = i + 1) { print(s); }
+                """);
+        Execution execution = program.newExecution().budget(Budget.UNLIMITED.withMaxAllocation(1_000_000));
+        BudgetExceededException e = assertThrows(BudgetExceededException.class, execution::run);
+        assertEquals(Budget.Limit.ALLOCATION, e.limit());
+    }
+
+    // Empty and non-empty bodies: loops tick on their back edges, also
+    // once the tree walker has tiered them up to compiled code.
+    static final String[] TIGHT_LOOPS = {
+        "while (true) { }",
+        "i = 0; while (true) { i = i + 1; }",
+    };
+
+    @ParameterizedTest
+    @EnumSource(Lox.Backend.class)
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void stepLimitStopsTightLoops(Lox.Backend backend) {
+        for (String loop : TIGHT_LOOPS) {
+            assertEquals(Budget.Limit.STEPS, exceeded(backend, Budget.UNLIMITED.withMaxSteps(100_000), loop), loop);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Lox.Backend.class)
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void timeoutStopsTightLoops(Lox.Backend backend) {
+        for (String loop : TIGHT_LOOPS) {
+            assertEquals(Budget.Limit.DEADLINE, exceeded(backend, Budget.UNLIMITED.withTimeout(Duration.ofMillis(100)), loop), loop);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Lox.Backend.class)
+    void stepLimitLetsAShorterLoopFinish(Lox.Backend backend) {
+        String output = run(backend, Budget.UNLIMITED.withMaxSteps(100_000), "s = 0; for (i = 0; i < 5000; i = i + 1) { s = s + i; } print(s);");
+        assertEquals("12497500", output.strip());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Lox.Backend.class)
+    void stringLimitCoversConcatAndNatives(Lox.Backend backend) {
+        Budget budget = Budget.UNLIMITED.withMaxStringLength(1000);
+        assertEquals(Budget.Limit.STRING_LENGTH, exceeded(backend, budget, "s = \"\"; for (i = 0; i < 200; i = i + 1) { s = s + \"abcdefghij\"; }"));
+        assertEquals(Budget.Limit.STRING_LENGTH, exceeded(backend, budget, "print(len(repeat(\"x\", 100000000)));"));
+        assertEquals(Budget.Limit.STRING_LENGTH, exceeded(backend, budget, "print(len(upper(repeat(\"x\", 600) + repeat(\"y\", 600))));"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Lox.Backend.class)
+    void allocationLimitCoversArrays(Lox.Backend backend) {
+        Budget budget = Budget.UNLIMITED.withMaxAllocation(1_000_000);
+        assertEquals(Budget.Limit.ALLOCATION, exceeded(backend, budget, "a = array(300000000);"));
+        assertEquals(Budget.Limit.ALLOCATION, exceeded(backend, budget, "a = array(50000); b = add(a, 1); c = mul(b, 2);"));
+        assertEquals("50000", run(backend, budget, "a = array(50000); print(len(a));").strip());
+    }
+}
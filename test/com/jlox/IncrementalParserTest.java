@@ -0,0 +1,232 @@
+package com.jlox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+// An edited and re-parsed script must be indistinguishable from a fresh
+// parse of the edited text: the same statements, the same token lines and
+// the same unit spans, whether the edit lands before, inside or after a
+// statement.
+class IncrementalParserTest {
+    static final String SOURCE = """
+            a = 1;
+            while (a < 3) {
+                a = a + 1;
+            }
+            print(a);
+            b = a * 2;""";
+
+    record Edit(String name, int startLine, int startColumn, int endLine, int endColumn, String text) {
+        @Override
+        public String toString() {
+            return this.name;
+        }
+
+        // The same edit applied to plain text.
+        String apply(String source) {
+            return source.substring(0, offset(source, this.startLine, this.startColumn)) + this.text
+                    + source.substring(offset(source, this.endLine, this.endColumn));
+        }
+
+        static int offset(String source, int line, int column) {
+            int offset = 0;
+            for (int i = 0; i < line; i++) {
+                offset = source.indexOf('\n', offset) + 1;
+            }
+            return offset + column;
+        }
+    }
+
+    static Stream<Edit> edits() {
+        return Stream.of(
+                new Edit("insert a statement before the first", 0, 0, 0, 0, "x = 0;\n"),
+                new Edit("insert blank lines between statements", 4, 0, 4, 0, "\n\n"),
+                new Edit("insert a line inside a block", 2, 4, 2, 4, "a = a + 2;\n    "),
+                new Edit("insert inside an expression", 4, 6, 4, 7, "a +\n 10"),
+                new Edit("insert inside a condition", 1, 11, 1, 12, "4 + (1 -\n1)"),
+                new Edit("insert a statement after the last", 5, 10, 5, 10, "\nc = b;"),
+                new Edit("append to the last statement's line", 5, 10, 5, 10, " print(b);"),
+                new Edit("delete the first statement", 0, 0, 1, 0, ""),
+                new Edit("delete a line inside a block", 2, 0, 3, 0, ""),
+                new Edit("join a block onto one line", 1, 15, 3, 0, " a = a + 1; "),
+                new Edit("delete inside an expression", 5, 5, 5, 9, ""),
+                new Edit("delete the last statement", 4, 9, 5, 10, ""),
+                new Edit("delete across statements", 0, 5, 4, 7, "0; print(a"),
+                new Edit("replace everything", 0, 0, 5, 10, "print(1);\nprint(2);\n"));
+    }
+
+    static String dump(IncrementalParser parser) {
+        StringBuilder out = new StringBuilder();
+        for (IncrementalParser.Unit unit : parser.units) {
+            out.append(unit.firstLine).append('-').append(unit.lastLine).append(' ');
+            out.append(unit.stmt.accept(new Dump())).append('\n');
+        }
+        return out.toString();
+    }
+
+    static void assertMatchesFreshParse(IncrementalParser parser, String expected) {
+        assertEquals(expected, parser.source());
+        IncrementalParser fresh = new IncrementalParser(expected);
+        assertEquals(fresh.valid, parser.valid);
+        if (fresh.valid) {
+            assertEquals(dump(fresh), dump(parser));
+        } else {
+            assertThrows(RuntimeException.class, parser::statements);
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("edits")
+    void editMatchesAFreshParse(Edit edit) {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        parser.edit(edit.startLine(), edit.startColumn(), edit.endLine(), edit.endColumn(), edit.text());
+        assertMatchesFreshParse(parser, edit.apply(SOURCE));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("edits")
+    void replaceMatchesAFreshParse(Edit edit) {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        String expected = edit.apply(SOURCE);
+        parser.replace(expected);
+        assertMatchesFreshParse(parser, expected);
+    }
+
+    // Reused units are shifted in place, so errors from them keep reporting
+    // the right line after edits above them.
+    @Test
+    void editsAboveAStatementMoveItsLines() {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        parser.edit(0, 0, 0, 0, "x = 0;\ny = 1;\n");
+        assertTrue(parser.reusedUnits > 0);
+        assertMatchesFreshParse(parser, "x = 0;\ny = 1;\n" + SOURCE);
+        parser.edit(0, 0, 2, 0, "");
+        assertMatchesFreshParse(parser, SOURCE);
+    }
+
+    // Edits that leave a syntax error are taken too, and the parser is in
+    // step again once the source is valid.
+    @Test
+    void recoversFromAnUnbalancedEdit() {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        String source = SOURCE;
+        List<Edit> steps = List.of(
+                new Edit("open a block", 1, 15, 1, 15, "\n    if (a > 1) {"),
+                new Edit("close it", 4, 0, 4, 0, "    }\n"),
+                new Edit("open a string", 6, 6, 6, 6, "\"unterminated"),
+                new Edit("close the string", 6, 19, 6, 19, "\" + "),
+                new Edit("delete the inner block", 2, 0, 5, 0, ""));
+        for (Edit step : steps) {
+            parser.edit(step.startLine(), step.startColumn(), step.endLine(), step.endColumn(), step.text());
+            source = step.apply(source);
+            assertMatchesFreshParse(parser, source);
+        }
+        assertTrue(parser.valid);
+    }
+
+    // Every node and token, with token lines.
+    static class Dump implements Expr.Visitor<String>, Stmt.Visitor<String> {
+        String token(Token token) {
+            return token.type + " " + token.lexeme + "@" + token.line;
+        }
+
+        String dump(Expr expr) {
+            return expr.accept(this);
+        }
+
+        String dump(Stmt stmt) {
+            return stmt == null ? "none" : stmt.accept(this);
+        }
+
+        @Override
+        public String visitBinaryExpr(Expr.Binary expr) {
+            return "(binary " + this.token(expr.operator) + " " + this.dump(expr.left) + " " + this.dump(expr.right) + ")";
+        }
+
+        @Override
+        public String visitAssignExpr(Expr.Assign expr) {
+            return "(assign " + this.token(expr.name) + " " + this.dump(expr.value) + ")";
+        }
+
+        @Override
+        public String visitLiteralExpr(Expr.Literal expr) {
+            return "(literal " + expr.value + ")";
+        }
+
+        @Override
+        public String visitVariableExpr(Expr.Variable expr) {
+            return "(variable " + this.token(expr.var) + ")";
+        }
+
+        @Override
+        public String visitUnaryExpr(Expr.Unary expr) {
+            return "(unary " + this.token(expr.operator) + " " + this.dump(expr.right) + ")";
+        }
+
+        @Override
+        public String visitLogicalExpr(Expr.Logical expr) {
+            return "(logical " + this.token(expr.op) + " " + this.dump(expr.left) + " " + this.dump(expr.right) + ")";
+        }
+
+        @Override
+        public String visitGroupingExpr(Expr.Grouping expr) {
+            return "(group " + this.dump(expr.expression) + ")";
+        }
+
+        @Override
+        public String visitCallExpr(Expr.Call expr) {
+            StringBuilder out = new StringBuilder("(call " + this.token(expr.name));
+            for (Expr argument : expr.arguments) {
+                out.append(' ').append(this.dump(argument));
+            }
+            return out.append(')').toString();
+        }
+
+        @Override
+        public String visitIndexExpr(Expr.Index expr) {
+            return "(index " + this.token(expr.bracket) + " " + this.dump(expr.array) + " " + this.dump(expr.index) + ")";
+        }
+
+        @Override
+        public String visitSetIndexExpr(Expr.SetIndex expr) {
+            return "(set-index " + this.token(expr.bracket) + " " + this.dump(expr.array) + " " + this.dump(expr.index) + " "
+                    + this.dump(expr.value) + ")";
+        }
+
+        @Override
+        public String visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            return "(expression " + this.dump(stmt.expression) + ")";
+        }
+
+        @Override
+        public String visitPrintStmt(Stmt.PrintStmt stmt) {
+            return "(print " + this.dump(stmt.expression) + ")";
+        }
+
+        @Override
+        public String visitBlock(Stmt.Block stmt) {
+            StringBuilder out = new StringBuilder("(block");
+            for (Stmt s : stmt.statements) {
+                out.append(' ').append(this.dump(s));
+            }
+            return out.append(')').toString();
+        }
+
+        @Override
+        public String visitIfStmt(Stmt.IfStmt stmt) {
+            return "(if " + this.dump(stmt.condition) + " " + this.dump(stmt.thenBranch) + " " + this.dump(stmt.elseBranch) + ")";
+        }
+
+        @Override
+        public String visitWhileStmt(Stmt.WhileStmt stmt) {
+            return "(while " + this.dump(stmt.condition) + " " + this.dump(stmt.body) + ")";
+        }
+    }
+}
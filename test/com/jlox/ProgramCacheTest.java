@@ -0,0 +1,155 @@
+package com.jlox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+// Eviction, shared compiles, failed compiles and clear() racing a compile.
+// Sources of the same shape compile to programs of the same estimated
+// size, so byte limits can be set to hold an exact number of entries.
+class ProgramCacheTest {
+    static String source(int n) {
+        return "a = " + n + "; print(a + 1);";
+    }
+
+    static long entryBytes() {
+        return Program.compile(source(0)).estimatedBytes() + ProgramCache.ENTRY_BYTES;
+    }
+
+    @Test
+    void evictsUnreferencedEntriesByCount() {
+        ProgramCache cache = new ProgramCache(2, Long.MAX_VALUE);
+        Program a = cache.get(source(1));
+        cache.get(source(2));
+        // The hit sets a's referenced bit, so the CLOCK hand passes over it
+        // once and evicts 2 instead.
+        assertSame(a, cache.get(source(1)));
+        cache.get(source(3));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertSame(a, cache.get(source(1)));
+        assertEquals(3, cache.misses());
+        cache.get(source(2));
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    void evictsByEstimatedBytes() {
+        long entry = entryBytes();
+        ProgramCache cache = new ProgramCache(Long.MAX_VALUE, 2 * entry + entry / 2);
+        for (int i = 0; i < 5; i++) {
+            cache.get(source(i));
+            assertEquals(Math.min(i + 1, 2), cache.size());
+            assertEquals(cache.size() * entry, cache.estimatedBytes());
+        }
+        assertEquals(3, cache.evictions());
+    }
+
+    // A single entry larger than the budget is still kept: evicting it
+    // would only make the next get compile it again.
+    @Test
+    void keepsOneEntryOverTheByteLimit() {
+        ProgramCache cache = new ProgramCache(Long.MAX_VALUE, 1);
+        cache.get(source(1));
+        cache.get(source(2));
+        assertEquals(1, cache.size());
+        assertEquals(entryBytes(), cache.estimatedBytes());
+    }
+
+    @Test
+    void concurrentMissesShareOneCompile() throws Exception {
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            big.append("x = x + ").append(i).append(";\n");
+        }
+        String source = "x = 0;\n" + big;
+        ProgramCache cache = new ProgramCache(10, Long.MAX_VALUE);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Program>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return cache.get(source);
+                }));
+            }
+            start.countDown();
+            Program first = results.get(0).get();
+            for (Future<Program> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, cache.misses());
+        assertEquals(threads - 1, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void failedCompileIsNotCachedAndIsRetried() {
+        ProgramCache cache = new ProgramCache(10, Long.MAX_VALUE);
+        RuntimeException first = assertThrows(RuntimeException.class, () -> cache.get("nope(1);"));
+        assertEquals("1:1: Undefined function at 'nope'", first.getMessage());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.estimatedBytes());
+
+        RuntimeException second = assertThrows(RuntimeException.class, () -> cache.get("nope(1);"));
+        assertNotSame(first, second);
+        assertEquals(2, cache.misses());
+        assertEquals(0, cache.hits());
+    }
+
+    // Drives get()'s miss path by hand so the clear lands while the entry
+    // is PENDING: the compile still completes for its waiters, but the
+    // entry is RELEASED and its bytes are never charged.
+    @Test
+    void clearDuringAPendingCompileDropsIt() {
+        ProgramCache cache = new ProgramCache(10, Long.MAX_VALUE);
+        cache.get(source(1));
+        String source = source(2);
+        ProgramCache.Entry pending = new ProgramCache.Entry(ProgramCache.Key.of(source));
+        cache.entries.put(pending.key, pending);
+
+        cache.clear();
+        assertEquals(ProgramCache.Entry.RELEASED, pending.state.get());
+        Program program = cache.compile(pending, source);
+
+        assertSame(program, pending.program.join());
+        assertEquals(ProgramCache.Entry.RELEASED, pending.state.get());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.estimatedBytes());
+        assertEquals(0, cache.clock.size());
+
+        assertNotSame(program, cache.get(source));
+        assertEquals(1, cache.size());
+        assertEquals(entryBytes(), cache.estimatedBytes());
+    }
+
+    // The other order: removal after the charge releases the bytes once.
+    @Test
+    void clearAfterACompileReleasesItsBytesOnce() {
+        ProgramCache cache = new ProgramCache(10, Long.MAX_VALUE);
+        cache.get(source(1));
+        ProgramCache.Entry entry = cache.entries.values().iterator().next();
+        assertEquals(ProgramCache.Entry.CHARGED, entry.state.get());
+
+        cache.clear();
+        assertEquals(0, cache.estimatedBytes());
+        assertFalse(cache.remove(entry));
+        assertEquals(0, cache.estimatedBytes());
+    }
+}